@@ -11,6 +11,7 @@ import javafx.fxml.FXMLLoader;
 import javafx.stage.Stage;
 import uni.insubria.theknife.model.FilterOptions;
 import uni.insubria.theknife.service.SessionService;
+import uni.insubria.theknife.service.StartupService;
 
 import java.io.IOException;
 
@@ -60,13 +61,15 @@ public class Launcher extends Application {
     /**
      * The main entry point for the JavaFX application.
      * <p>
-     * This method launches the JavaFX application by calling the
-     * Application.launch() method.
+     * This method starts loading the application data in background and then
+     * launches the JavaFX application by calling the Application.launch() method,
+     * so that the login view is shown while the data is still being loaded.
      * </p>
      *
      * @param args Command line arguments passed to the application
      */
     public static void main(String[] args) {
+        StartupService.start();
         launch(args);
     }
 }
@@ -21,6 +21,7 @@ import uni.insubria.theknife.model.Role;
 import uni.insubria.theknife.model.User;
 import uni.insubria.theknife.repository.ReviewsRepository;
 import uni.insubria.theknife.service.AlertService;
+import uni.insubria.theknife.service.AutocompleteService;
 import uni.insubria.theknife.service.SessionService;
 
 import java.io.IOException;
@@ -28,10 +29,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import org.controlsfx.control.textfield.AutoCompletionBinding;
-import org.controlsfx.control.textfield.TextFields;
 
 import javafx.geometry.Insets;
 import javafx.geometry.Side;
@@ -93,18 +92,8 @@ public class FiltersController {
         welcomeLabel.setText(String.format("Welcome %s!", user != null ? user.getUsername() : "guest"));
 
         // Bind autocomplete for textfields cuisine & location
-        TextFields.bindAutoCompletion(cuisineField, param -> {
-            String userText = param.getUserText().toLowerCase();
-            return SessionService.getCuisines().stream()
-                    .filter(c -> c.toLowerCase().contains(userText))
-                    .collect(Collectors.toList());
-        });
-        TextFields.bindAutoCompletion(locationField, param -> {
-            String userText = param.getUserText().toLowerCase();
-            return SessionService.getLocations().stream()
-                    .filter(l -> l.toLowerCase().contains(userText))
-                    .collect(Collectors.toList());
-        });
+        AutocompleteService.bindCuisines(cuisineField);
+        AutocompleteService.bindLocations(locationField);
 
         // Cuisine
         cuisineField.setText(filters.getCuisine() == null ? "" : filters.getCuisine());
@@ -6,12 +6,14 @@ Morosini Luca 760029 VA
 */
 package uni.insubria.theknife.controller;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.geometry.Insets;
+import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
@@ -25,19 +27,27 @@ import uni.insubria.theknife.model.Restaurant;
 import uni.insubria.theknife.model.Review;
 import uni.insubria.theknife.model.Role;
 import uni.insubria.theknife.model.User;
+import uni.insubria.theknife.repository.RestaurantIndex;
 import uni.insubria.theknife.repository.RestaurantRepository;
 import uni.insubria.theknife.repository.ReviewsRepository;
+import uni.insubria.theknife.repository.SpatialIndex;
+import uni.insubria.theknife.service.AutocompleteService;
+import uni.insubria.theknife.service.CatalogService;
+import uni.insubria.theknife.service.SearchService;
 import uni.insubria.theknife.service.SessionService;
-import uni.insubria.theknife.util.DistanceCalculator;
+import uni.insubria.theknife.service.StartupService;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 /**
@@ -85,6 +95,22 @@ public class HomeController {
      */
     private static final String FILTERS_VIEW_PATH = "/view/filters.fxml";
 
+    /**
+     * Number of restaurants loaded at a time into the list view.
+     */
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * Number of rows from the end of the list at which the next page is loaded.
+     */
+    private static final int LOAD_AHEAD = 10;
+
+    /**
+     * Executor selecting the next pages of the list, each on its own virtual thread.
+     */
+    private static final ExecutorService pageLoaders = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("page-", 0).factory());
+
     /**
      * List view displaying available restaurants.
      */
@@ -98,6 +124,22 @@ public class HomeController {
 
     private boolean toggled = false;
 
+    /**
+     * The restaurants the list is taken from while the favorites or reviewed toggle is active,
+     * or null if the list is taken from the whole catalogue.
+     */
+    private List<Restaurant> listSource = null;
+
+    /**
+     * The pages of the displayed list still to load, or null if the list is complete.
+     */
+    private RestaurantPages pages = null;
+
+    /**
+     * Whether the loading of the next page has already been scheduled.
+     */
+    private boolean loadingPage = false;
+
     /**
      * Label displaying welcome message with the current user's name.
      */
@@ -140,8 +182,9 @@ public class HomeController {
      */
     @FXML
     public void initializeListView() {
-        // Load all restaurants only once, when the view is initialized
-        allRestaurants = RestaurantRepository.loadRestaurants();
+        // Take the restaurants from the catalogue, already loaded once
+        allRestaurants = CatalogService.getRestaurants().stream()
+                .collect(Collectors.toMap(Restaurant::getId, r -> r));
 
         restaurantListView.setItems(FXCollections.observableArrayList(allRestaurants.values()));
     }
@@ -193,15 +236,21 @@ public class HomeController {
      * This method:
      * <ol>
      *   <li>Finds the reference coordinates for distance calculation</li>
-     *   <li>Filters and sorts restaurants based on distance and user role</li>
-     *   <li>Sets up the restaurant list view with the filtered restaurants</li>
+     *   <li>Filters and sorts restaurants based on distance and user role, in background</li>
+     *   <li>Sets up the restaurant list view with the filtered restaurants, once they are ready</li>
      *   <li>Sets up the selection handler for restaurant clicks</li>
      * </ol>
      */
     public void displayRestaurants() {
-        //Restaurant.Coordinate referenceCoordinates = findReferenceCoordinates();
-        List<Restaurant> filteredRestaurants = getFilteredRestaurants(/*referenceCoordinates*/);
-        setupRestaurantListView(filteredRestaurants);
+        long inputNanos = System.nanoTime();
+        User user = SessionService.getUserFromSession();
+        FilterOptions.Compiled filters = SessionService.getCompiledFilters();
+        String city = findReferenceCity(user);
+        SearchService.submitNow(() -> getFilteredRestaurants(user, filters, findReferenceCoordinates(city)),
+                loaded -> {
+                    showPages(loaded);
+                    recordRendered(inputNanos);
+                });
         setupSelectionHandler();
     }
 
@@ -227,22 +276,46 @@ public class HomeController {
 
 
     /**
-     * Finds the reference coordinates for distance calculations based on the current location.
+     * Returns the city the home list is ordered around.
+     * <p>
+     * This is the location selected in the filters if any, otherwise the city of the user.
+     * </p>
+     *
+     * @param user The current user, or null for guests
+     * @return The reference city, or null if there is none
+     */
+    private static String findReferenceCity(User user) {
+        FilterOptions filters = SessionService.getFilters();
+        if (filters != null && filters.getLocation() != null && !filters.getLocation().isBlank()) {
+            return filters.getLocation();
+        }
+        return user != null && user.getCity() != null && !user.getCity().isBlank() ? user.getCity() : null;
+    }
+
+    /**
+     * Finds the reference coordinates for distance calculations based on the given city.
      * <p>
-     * This method searches for a restaurant in the current location and uses its
-     * coordinates as a reference point for calculating distances to other restaurants.
+     * This method takes the restaurants in the city from the restaurant index and uses the
+     * centre of their coordinates as a reference point for calculating distances to other restaurants.
      * </p>
      *
+     * @param city The reference city, or null
      * @return A Coordinate object representing the reference point, or null if no restaurant
-     *         is found in the current location
+     *         with coordinates is found in the city
      */
-    // private Restaurant.Coordinate findReferenceCoordinates() {
-    //     return SessionService.getRestaurants().stream()
-    //         .filter(restaurant -> restaurant.getLocation().equals(SessionService.getFilters().getLocation()))
-    //         .map(restaurant -> new Restaurant.Coordinate(restaurant.getLongitude(), restaurant.getLatitude()))
-    //         .findFirst()
-    //         .orElse(null);
-    // }
+    private static Restaurant.Coordinate findReferenceCoordinates(String city) {
+        if (city == null) return null;
+        double latitude = 0;
+        double longitude = 0;
+        int count = 0;
+        for (Restaurant restaurant : CatalogService.getRestaurantIndex().withLocation(city)) {
+            if (restaurant.getLatitude() == null || restaurant.getLongitude() == null) continue;
+            latitude += restaurant.getLatitude();
+            longitude += restaurant.getLongitude();
+            count++;
+        }
+        return count == 0 ? null : new Restaurant.Coordinate((float) (longitude / count), (float) (latitude / count));
+    }
 
     /**
      * Filters and sorts the list of restaurants based on user role and distance.
@@ -252,43 +325,169 @@ public class HomeController {
      * <ul>
      *   <li>For regular users and guests, shows all restaurants</li>
      *   <li>For restaurant owners, shows only their own restaurants</li>
-     *   <li>Updates the distance for each restaurant from the reference coordinates</li>
-     *   <li>Sorts restaurants by distance (closest first)</li>
+     *   <li>Sorts restaurants by distance (closest first) through the spatial index, or by name
+     *       if there are no reference coordinates; restaurants without coordinates come last</li>
      * </ul>
      *
-     * @param referenceCoordinates The coordinates to calculate distances from
-     * @return A filtered and sorted list of Restaurant objects
+     * <p>
+     * Restaurants ordered by distance are selected one page at a time, as the user scrolls,
+     * instead of sorting the whole catalogue; only the first page is loaded here. The distances
+     * stay in the neighbors returned by the index: the restaurants of the catalogue are shared
+     * and are not modified.
+     * </p>
+     *
+     * <p>
+     * The user and the filters are read from the session by the caller, so that this
+     * method can run outside of the JavaFX application thread.
+     * </p>
+     *
+     * @param user                 The current user, or null for guests
+     * @param filters              The compiled filters, or null if no filters are set
+     * @param referenceCoordinates The coordinates to calculate distances from, or null
+     * @return The filtered and sorted restaurants, with the first page loaded
      */
-    private List<Restaurant> getFilteredRestaurants() {
-        List<Restaurant> all = SessionService.getRestaurants(); // ora prende dati aggiornati
-        User user = SessionService.getUserFromSession();
-        FilterOptions filters = SessionService.getFilters();
+    private static RestaurantPages getFilteredRestaurants(User user, FilterOptions.Compiled filters,
+                                                          Restaurant.Coordinate referenceCoordinates) {
+        if (referenceCoordinates == null) {
+            // Walks the cached order by name of the index, nothing is sorted here
+            List<Restaurant> byName = CatalogService.getRestaurantIndex().sorted(RestaurantIndex.SortOrder.NAME, filters);
+            return new RestaurantPages(null, byName.stream()
+                    .filter(r -> isVisibleTo(user, r))
+                    .collect(Collectors.toList()));
+        }
 
-        return all.stream()
-                .filter(r -> user == null || !Role.RISTORATORE.equals(user.getRole()) || user.getRestaurants().contains(r))
-                .filter(r -> filters == null || filters.matches(r))
-                .sorted(Comparator.comparing(Restaurant::getName, String.CASE_INSENSITIVE_ORDER))
+        SpatialIndex.Cursor cursor = CatalogService.getSpatialIndex().byDistance(
+                referenceCoordinates.getLatitude(), referenceCoordinates.getLongitude(),
+                r -> (filters == null || filters.test(r)) && isVisibleTo(user, r));
+
+        // Restaurants without coordinates are not in the spatial index
+        List<Restaurant> withoutCoordinates = CatalogService.getRestaurantIndex().withoutCoordinates(filters).stream()
+                .filter(r -> isVisibleTo(user, r))
                 .collect(Collectors.toList());
+        return new RestaurantPages(cursor, withoutCoordinates);
     }
 
-
     /**
-     * Updates the distance property of a restaurant based on reference coordinates.
+     * The restaurants of the home list, loaded one page at a time.
+     * <p>
+     * Restaurants ordered by distance are read from a cursor of the spatial index, followed by
+     * the restaurants without coordinates.
+     * </p>
      * <p>
-     * This method calculates the distance between the restaurant and the reference coordinates
-     * using the Haversine formula, and sets the distance property on the restaurant object.
+     * A page is selected outside of the JavaFX application thread by {@link #load()}, and the
+     * list only moves past it by {@link #advance(Page)} once it is shown, so that a page which
+     * is never shown is not skipped (see {@link #requestNextPage()}).
      * </p>
+     */
+    private static class RestaurantPages {
+        /**
+         * The restaurants ordered by distance, or null if the list is not ordered by distance.
+         */
+        private final SpatialIndex.Cursor cursor;
+
+        /**
+         * The restaurants to show after the ones from the cursor.
+         */
+        private final List<Restaurant> tail;
+
+        /**
+         * The number of restaurants of the tail already loaded.
+         */
+        private int tailPosition = 0;
+
+        /**
+         * The distances in km of the restaurants loaded from the cursor, by restaurant ID.
+         */
+        private final Map<String, Double> distances = new HashMap<>();
+
+        /**
+         * The first page.
+         */
+        private final List<Restaurant> first;
+
+        /**
+         * Creates the pages of a list and loads the first one.
+         *
+         * @param cursor The restaurants ordered by distance, or null
+         * @param tail   The restaurants to show after the ones from the cursor
+         */
+        private RestaurantPages(SpatialIndex.Cursor cursor, List<Restaurant> tail) {
+            this.cursor = cursor;
+            this.tail = tail;
+            this.first = advance(load());
+        }
+
+        /**
+         * Selects the next page, without moving past it.
+         *
+         * @return The next page; an empty page when there are no more
+         */
+        private Page load() {
+            List<SpatialIndex.Neighbor> nearest = cursor == null ? List.of() : cursor.peek(PAGE_SIZE);
+            int tailEnd = tailPosition;
+            if (nearest.size() < PAGE_SIZE) {
+                tailEnd = Math.min(tail.size(), tailPosition + PAGE_SIZE - nearest.size());
+            }
+            return new Page(nearest, tailEnd);
+        }
+
+        /**
+         * Moves the list past a page selected by {@link #load()}.
+         *
+         * @param page The page
+         * @return Up to {@link #PAGE_SIZE} restaurants
+         */
+        private List<Restaurant> advance(Page page) {
+            if (cursor != null) cursor.advance(page.nearest(), PAGE_SIZE);
+            List<Restaurant> restaurants = new ArrayList<>(PAGE_SIZE);
+            for (SpatialIndex.Neighbor neighbor : page.nearest()) {
+                restaurants.add(neighbor.restaurant());
+                distances.put(neighbor.restaurant().getId(), neighbor.distance());
+            }
+            restaurants.addAll(tail.subList(tailPosition, page.tailEnd()));
+            tailPosition = page.tailEnd();
+            return restaurants;
+        }
+
+        /**
+         * Returns the distance of a restaurant of the list from the reference coordinates.
+         *
+         * @param restaurant The restaurant
+         * @return The distance in km, or null if the restaurant was not loaded from the cursor
+         */
+        private Double distanceOf(Restaurant restaurant) {
+            return distances.get(restaurant.getId());
+        }
+
+        /**
+         * Returns whether there are more pages to load.
+         *
+         * @return true if the next page may not be empty
+         */
+        private boolean hasNext() {
+            return (cursor != null && cursor.hasNext()) || tailPosition < tail.size();
+        }
+    }
+
+    /**
+     * A page of the home list, selected but not shown yet.
      *
-     * @param restaurant The restaurant to update with distance information
-     * @param referenceCoordinates The reference coordinates to calculate distance from,
-     *                            or null if no reference coordinates are available
+     * @param nearest The restaurants from the cursor, closest first, with their distance
+     * @param tailEnd The position of the tail the page ends at
      */
-    // private void updateRestaurantDistance(Restaurant restaurant, Restaurant.Coordinate referenceCoordinates) {
-    //     if (referenceCoordinates != null) {
-    //         double distance = DistanceCalculator.calculateDistanceInKm(restaurant, referenceCoordinates);
-    //         restaurant.setDistance(distance);
-    //     }
-    // }
+    private record Page(List<SpatialIndex.Neighbor> nearest, int tailEnd) {
+    }
+
+    /**
+     * Checks whether a restaurant is shown to a user: restaurant owners only see their own restaurants.
+     *
+     * @param user       The current user, or null for guests
+     * @param restaurant The restaurant to check
+     * @return true if the restaurant is visible to the user; false otherwise
+     */
+    private static boolean isVisibleTo(User user, Restaurant restaurant) {
+        return user == null || !Role.RISTORATORE.equals(user.getRole()) || user.getRestaurants().contains(restaurant);
+    }
 
     /**
      * Sets up the restaurant list view with the provided list of restaurants.
@@ -304,11 +503,82 @@ public class HomeController {
      * @param restaurants The list of Restaurant objects to display in the list view
      */
     private void setupRestaurantListView(List<Restaurant> restaurants) {
+        pages = null;
+        loadingPage = false;
         ObservableList<Restaurant> restaurantList = FXCollections.observableArrayList(restaurants);
         restaurantListView.setItems(restaurantList);
         restaurantListView.setCellFactory(this::createRestaurantCell);
     }
 
+    /**
+     * Records the latency of a search once the list showing its result has been laid out.
+     * <p>
+     * To be called on the JavaFX application thread right after the items are set: the
+     * sample is taken by a one-shot listener at the end of the layout of the next pulse,
+     * the last step before the scene is rendered.
+     * </p>
+     *
+     * @param inputNanos The time of the user input, as returned by {@link System#nanoTime()}
+     */
+    private void recordRendered(long inputNanos) {
+        Scene scene = restaurantListView.getScene();
+        if (scene == null) {
+            SearchService.INPUT_TO_RENDER.recordSince(inputNanos);
+            return;
+        }
+        Runnable listener = new Runnable() {
+            private boolean recorded = false;
+
+            @Override
+            public void run() {
+                if (recorded) return;
+                recorded = true;
+                SearchService.INPUT_TO_RENDER.recordSince(inputNanos);
+                // Not removed while the scene is notifying its listeners
+                Platform.runLater(() -> scene.removePostLayoutPulseListener(this));
+            }
+        };
+        scene.addPostLayoutPulseListener(listener);
+        Platform.requestNextPulse();
+    }
+
+    /**
+     * Sets up the restaurant list view with the first page of a list, loading the
+     * following pages as the user scrolls.
+     *
+     * @param pages The pages of the list
+     */
+    private void showPages(RestaurantPages pages) {
+        setupRestaurantListView(pages.first);
+        this.pages = pages;
+    }
+
+    /**
+     * Schedules the loading of the next page of the displayed list, if any.
+     * <p>
+     * The page is selected in background by the {@link #pageLoaders}, which never cancel
+     * nor are canceled by a search, and appended later on the JavaFX application thread,
+     * since the items cannot be changed while the cells are being laid out. The list only
+     * moves past the page when it is appended: a page loaded for a list replaced meanwhile
+     * is discarded.
+     * </p>
+     */
+    private void requestNextPage() {
+        if (pages == null || loadingPage || !pages.hasNext()) return;
+        loadingPage = true;
+        RestaurantPages current = pages;
+        CompletableFuture.supplyAsync(current::load, pageLoaders).whenComplete((page, e) -> Platform.runLater(() -> {
+            // The list may have been replaced meanwhile
+            if (current != pages) return;
+            loadingPage = false;
+            if (e != null) {
+                log.error("Error loading the next page of restaurants", e);
+                pages = null;
+                return;
+            }
+            restaurantListView.getItems().addAll(current.advance(page));
+        }));
+    }
 
     // TextField used to capture the user's input for restaurant name search
     @FXML
@@ -318,31 +588,66 @@ public class HomeController {
      * Handles the real-time search of restaurants based on user input in the search field.
      * <p>
      * This method is triggered every time a key is released inside the search TextField.
-     * It filters the currently visible list of restaurants by matching the input text
-     * with the restaurant names (case-insensitive). If the input is empty, it resets
-     * the view by displaying the original filtered list (by city and user role).
+     * It looks the input text up in the name search index (case- and accent-insensitive),
+     * keeping only the restaurants matching the active filters and visible to the user,
+     * ranked by relevance. While the favorites or reviewed toggle is active, only the
+     * restaurants of that list are kept instead. If the input is empty, it resets the view
+     * by displaying the original list.
+     * </p>
+     * <p>
+     * The search is debounced and runs in background through the {@link SearchService}:
+     * only the result of the last keystroke is shown.
+     * </p>
      *
      * @param event The KeyEvent triggered by typing in the search TextField
      */
     @FXML
     private void handleSearch(KeyEvent event) {
+        long inputNanos = System.nanoTime();
+
         // Get the current input from the search field
         String query = searchField.getText();
+        User user = SessionService.getUserFromSession();
+        FilterOptions.Compiled filters = SessionService.getCompiledFilters();
+        List<Restaurant> source = listSource;
 
-        // If the query is blank or null, restore the original list (filtered by city and user role)
+        // If the query is blank or null, restore the original list (favorites, reviewed, or filtered by city and user role)
         if (query == null || query.isBlank()) {
-            displayRestaurants();
+            if (source != null) {
+                SearchService.cancel();
+                setupRestaurantListView(source);
+                recordRendered(inputNanos);
+                return;
+            }
+            String city = findReferenceCity(user);
+            SearchService.submit(() -> getFilteredRestaurants(user, filters, findReferenceCoordinates(city)),
+                    loaded -> {
+                        showPages(loaded);
+                        recordRendered(inputNanos);
+                    });
             return;
         }
 
-        // Get the currently displayed list of restaurants
-        List<Restaurant> currentRestaurants = restaurantListView.getItems();
-
-        // Filter the current list based on the search query
-        List<Restaurant> results = RestaurantRepository.searchRestaurants(currentRestaurants, query);
-
-        // Update the ListView with the filtered results
-        restaurantListView.setItems(FXCollections.observableArrayList(results));
+        // Search the whole list source, so that deleting characters widens the results again
+        if (source != null) {
+            // The filters are not applied to the favorites and reviewed lists
+            SearchService.submit(() -> {
+                Set<Restaurant> allowed = new HashSet<>(source);
+                return RestaurantRepository.searchRestaurants(query, null).stream()
+                        .filter(allowed::contains)
+                        .collect(Collectors.toList());
+            }, restaurants -> {
+                setupRestaurantListView(restaurants);
+                recordRendered(inputNanos);
+            });
+            return;
+        }
+        SearchService.submit(() -> RestaurantRepository.searchRestaurants(query, filters).stream()
+                .filter(r -> isVisibleTo(user, r))
+                .collect(Collectors.toList()), restaurants -> {
+            setupRestaurantListView(restaurants);
+            recordRendered(inputNanos);
+        });
     }
 
     /**
@@ -361,6 +666,9 @@ public class HomeController {
             protected void updateItem(Restaurant restaurant, boolean empty) {
                 super.updateItem(restaurant, empty);
                 setText(empty ? null : formatRestaurantText(restaurant));
+                if (!empty && getIndex() >= getListView().getItems().size() - LOAD_AHEAD) {
+                    requestNextPage();
+                }
             }
         };
     }
@@ -369,14 +677,16 @@ public class HomeController {
      * Formats restaurant information into a display string.
      * <p>
      * This method creates a formatted string containing the restaurant's name,
-     * location, and distance from the reference point.
+     * location, and distance from the reference point, if the list is ordered by distance.
      * </p>
      *
      * @param restaurant The Restaurant object to format
      * @return A formatted string representation of the restaurant
      */
     private String formatRestaurantText(Restaurant restaurant) {
-        return String.format("%s - %s"/* - (%.0fkm)*/, restaurant.getName(), restaurant.getLocation()/*, restaurant.getDistance()*/);
+        Double distance = pages == null ? null : pages.distanceOf(restaurant);
+        if (distance == null) return String.format("%s - %s", restaurant.getName(), restaurant.getLocation());
+        return String.format("%s - %s - (%.1fkm)", restaurant.getName(), restaurant.getLocation(), distance);
     }
 
     /**
@@ -452,9 +762,19 @@ public class HomeController {
         if (toggled) {
             User user = SessionService.getUserFromSession();
             listPlaceholder.setText("Nessun ristorante preferito.");
-            setupRestaurantListView(new ArrayList<>(user.getRestaurants()));
+            SearchService.cancel();
+            // The favorites of the user only hold their ID until resolved against the catalogue
+            StartupService.whenCatalogReady(() -> {
+                if (!favoritesToggle.isSelected()) return;
+                listSource = user.getRestaurants().stream()
+                        .map(reference -> CatalogService.get(reference.getId()))
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList());
+                setupRestaurantListView(listSource);
+            });
         } else {
             listPlaceholder.setText("Nessun ristorante trovato per la location selezionata.");
+            listSource = null;
             displayRestaurants();
         }
 
@@ -476,24 +796,21 @@ public class HomeController {
 
             // Get user in session & all restaurants
             User user = SessionService.getUserFromSession();
-            List<Restaurant> restaurants = SessionService.getRestaurants();
+            List<Restaurant> restaurants = CatalogService.getRestaurants();
 
             // Get only restaurants reviewed by user in session + display them
-            List<Restaurant> reviewedRestaurants = ReviewsRepository.loadReviews().values().stream()
-                    .filter(review -> review.getUser() != null && review.getUser().getUsername().equals(user.getUsername()))
-                    .map(review -> {
-                        String restaurantId = review.getRestaurant().getId();
-                        return restaurants.stream()
-                                .filter(r -> r.getId().equals(restaurantId))
-                                .findFirst()
-                                .orElse(null);
-                    })
-                    .filter(Objects::nonNull)
-                    .distinct()
+            Set<String> reviewedIds = ReviewsRepository.reviewsByUser(user).stream()
+                    .map(review -> review.getRestaurant().getId())
+                    .collect(Collectors.toSet());
+            List<Restaurant> reviewedRestaurants = restaurants.stream()
+                    .filter(r -> reviewedIds.contains(r.getId()))
                     .collect(Collectors.toList());
-            setupRestaurantListView(reviewedRestaurants);
+            SearchService.cancel();
+            listSource = reviewedRestaurants;
+            setupRestaurantListView(listSource);
         } else {
             listPlaceholder.setText("Nessun ristorante trovato per la location selezionata.");
+            listSource = null;
             displayRestaurants();
         }
 
@@ -534,6 +851,8 @@ public class HomeController {
         TextField phoneField = new TextField();
         TextField cuisineField = new TextField();
         TextField websiteField = new TextField();
+        AutocompleteService.bindLocations(locationField);
+        AutocompleteService.bindCuisines(cuisineField);
 
         TextField priceField = new TextField();
         TextField longitudeField = new TextField();
@@ -10,6 +10,8 @@ import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
 
@@ -18,7 +20,9 @@ import org.controlsfx.control.textfield.TextFields;
 import uni.insubria.theknife.Main;
 import uni.insubria.theknife.service.AlertService;
 import uni.insubria.theknife.service.SecurityService;
+import uni.insubria.theknife.service.CatalogService;
 import uni.insubria.theknife.service.SessionService;
+import uni.insubria.theknife.service.StartupService;
 import uni.insubria.theknife.model.User;
 import uni.insubria.theknife.repository.UserRepository;
 
@@ -60,6 +64,18 @@ public class LoginController {
     @FXML
     private TextField cityTextField;
 
+    /**
+     * Button for continuing as a guest, enabled once the restaurants are loaded.
+     */
+    @FXML
+    private Button guestButton;
+
+    /**
+     * Label shown while the restaurants are being loaded.
+     */
+    @FXML
+    private Label loadingLabel;
+
     /**
      * Text field for entering the username.
      */
@@ -78,10 +94,26 @@ public class LoginController {
      * This method is automatically called after the FXML file has been loaded.
      * It sets up auto-completion for the city text field using available locations.
      * </p>
+     * <p>
+     * Logging in is possible right away; the guest access needs the restaurants, so it is
+     * enabled once they are loaded in background.
+     * </p>
      */
     @FXML
     private void initialize() {
-        TextFields.bindAutoCompletion(cityTextField, SessionService.getLocations());
+        boolean ready = StartupService.isCatalogReady();
+        cityTextField.setDisable(!ready);
+        guestButton.setDisable(!ready);
+        loadingLabel.setVisible(!ready);
+        loadingLabel.setManaged(!ready);
+
+        StartupService.whenCatalogReady(() -> {
+            TextFields.bindAutoCompletion(cityTextField, CatalogService.getLocations());
+            cityTextField.setDisable(false);
+            guestButton.setDisable(false);
+            loadingLabel.setVisible(false);
+            loadingLabel.setManaged(false);
+        });
     }
 
     /**
@@ -144,7 +176,7 @@ public class LoginController {
     protected void onGuestButtonClick() throws IOException {
         String selectedLocation = cityTextField.getText();
 
-        boolean locationExists = SessionService.getLocations().stream().anyMatch(location -> location.equalsIgnoreCase(selectedLocation));
+        boolean locationExists = CatalogService.getLocations().stream().anyMatch(location -> location.equalsIgnoreCase(selectedLocation));
 
         if (selectedLocation == null || selectedLocation.isBlank()) {
             SessionService.setFilters(new FilterOptions());
@@ -19,7 +19,9 @@ import uni.insubria.theknife.model.Role;
 import uni.insubria.theknife.repository.UserRepository;
 import uni.insubria.theknife.service.AlertService;
 import uni.insubria.theknife.service.SecurityService;
+import uni.insubria.theknife.service.CatalogService;
 import uni.insubria.theknife.service.SessionService;
+import uni.insubria.theknife.service.StartupService;
 import uni.insubria.theknife.model.User;
 
 import java.io.IOException;
@@ -83,7 +85,8 @@ public class RegisterController {
      */
     @FXML
     private void initialize() {
-        TextFields.bindAutoCompletion(cityTextField, SessionService.getLocations());
+        // The locations are available once the restaurants are loaded in background
+        StartupService.whenCatalogReady(() -> TextFields.bindAutoCompletion(cityTextField, CatalogService.getLocations()));
     }
 
     /**
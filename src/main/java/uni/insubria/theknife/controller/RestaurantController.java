@@ -20,6 +20,7 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
+import uni.insubria.theknife.model.RatingSummary;
 import uni.insubria.theknife.model.Restaurant;
 import uni.insubria.theknife.model.Review;
 import uni.insubria.theknife.model.Role;
@@ -27,12 +28,13 @@ import uni.insubria.theknife.model.User;
 import uni.insubria.theknife.repository.RestaurantRepository;
 import uni.insubria.theknife.repository.ReviewsRepository;
 import uni.insubria.theknife.service.AlertService;
+import uni.insubria.theknife.service.AutocompleteService;
 import uni.insubria.theknife.service.SessionService;
+import uni.insubria.theknife.util.ContentId;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
 
 import javafx.geometry.Insets;
@@ -504,7 +506,7 @@ public class RestaurantController {
     private Review createReview(User user, Restaurant restaurant) {
         String ratingText = ratingSelector.getValue();
         int stars = Character.getNumericValue(ratingText.charAt(0));
-        return new Review().setId(String.valueOf(Objects.hash(user.getUsername(), restaurant.getId()))).setUser(user).setRestaurant(restaurant).setContent(reviewContent.getText()).setStars(stars);
+        return new Review().setId(ContentId.of(user.getUsername(), restaurant.getId())).setUser(user).setRestaurant(restaurant).setContent(reviewContent.getText()).setStars(stars);
     }
 
     /**
@@ -590,12 +592,14 @@ public class RestaurantController {
      *   <li>The total number of reviews for the restaurant</li>
      *   <li>The average rating across all reviews</li>
      * </ul>
-     *
-     * @param reviews The list of Review objects for the restaurant
+     * <p>
+     * Both are read from the running rating aggregates of the restaurant in session.
+     * </p>
      */
-    private void updateReviewSummary(List<Review> reviews) {
-        int totalReviews = reviews.size();
-        double averageRating = reviews.stream().mapToInt(Review::getStars).average().orElse(0.0);
+    private void updateReviewSummary() {
+        RatingSummary rating = ReviewsRepository.ratingOf(SessionService.getRestaurantFromSession().orElse(null));
+        int totalReviews = rating.getCount();
+        double averageRating = rating.average();
 
         totalReviewsLabel.setText(String.valueOf(totalReviews));
         averageRatingLabel.setText(String.format("%.1f ★", averageRating));
@@ -624,7 +628,7 @@ public class RestaurantController {
         reviewsListView.refresh();
 
         // Update the summary when reviews change
-        updateReviewSummary(reviews);
+        updateReviewSummary();
     }
 
     /**
@@ -827,7 +831,7 @@ public class RestaurantController {
             if (review != null && !answerField.getText().trim().isEmpty()) {
                 review.setAnswer(answerField.getText().trim());
                 updateItem(review, false);
-                ReviewsRepository.editReview(review);
+                ReviewsRepository.answerReview(review);
                 // Clear the input field
                 answerField.clear();
             }
@@ -1024,6 +1028,8 @@ public class RestaurantController {
         TextField phoneField = new TextField(restaurant.getPhone());
         TextField cuisineField = new TextField(restaurant.getCuisine());
         TextField websiteField = new TextField(restaurant.getWebsiteUrl());
+        AutocompleteService.bindLocations(locationField);
+        AutocompleteService.bindCuisines(cuisineField);
 
         TextField priceField = new TextField(restaurant.getPrice());
         TextField longitudeField = new TextField(restaurant.getLongitude() != null ? restaurant.getLongitude().toString() : "");
@@ -1211,7 +1217,6 @@ public class RestaurantController {
                 if (result == RestaurantRepository.ERROR_CODE.NONE) {
                     // Cancellazione avvenuta con successo
                     // Torna indietro passando l'evento al metodo handleBack
-                    SessionService.clearRestaurants();
                     handleBack();
                 } else {
                     Alert errorAlert = new Alert(Alert.AlertType.ERROR);
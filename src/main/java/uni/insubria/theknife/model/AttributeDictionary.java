@@ -0,0 +1,209 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Dictionary encoding for the low-cardinality attributes of the restaurants.
+ * <p>
+ * Every distinct value of an attribute (e.g. a location or a cuisine) is stored once
+ * and identified by a small integer code; restaurants only keep a reference to the
+ * shared value and its code. Codes are assigned in order of first appearance and never
+ * change for the lifetime of the application.
+ * </p>
+ * <p>
+ * Values differing only in case share the same <i>folded</i> code, so case-insensitive
+ * comparisons between restaurants and filters become integer comparisons.
+ * </p>
+ */
+public final class AttributeDictionary {
+
+    /**
+     * Code used for a null value.
+     */
+    public static final int NULL_CODE = -1;
+
+    /**
+     * Dictionary of the restaurant locations.
+     */
+    public static final AttributeDictionary LOCATIONS = new AttributeDictionary();
+
+    /**
+     * Dictionary of the restaurant cuisines.
+     */
+    public static final AttributeDictionary CUISINES = new AttributeDictionary();
+
+    /**
+     * Dictionary of the restaurant price ranges.
+     */
+    public static final AttributeDictionary PRICES = new AttributeDictionary();
+
+    /**
+     * Dictionary of the Michelin awards.
+     */
+    public static final AttributeDictionary AWARDS = new AttributeDictionary();
+
+    /**
+     * Dictionary of the single facilities and services, as found in the comma-separated facilities.
+     */
+    public static final AttributeDictionary FACILITIES = new AttributeDictionary();
+
+    /**
+     * Codes of the known values.
+     */
+    private final Map<String, Integer> codes = new HashMap<>();
+
+    /**
+     * Folded codes of the known values, keyed by lower-case value.
+     */
+    private final Map<String, Integer> foldedCodes = new HashMap<>();
+
+    /**
+     * Known values, indexed by code.
+     */
+    private final List<String> values = new ArrayList<>();
+
+    /**
+     * Folded code of every known value, indexed by code.
+     */
+    private int[] folds = new int[16];
+
+    /**
+     * Distinct values sorted alphabetically, or null if they must be recomputed.
+     */
+    private List<String> sortedValues;
+
+    /**
+     * Codes of the values containing a given keyword, keyed by lower-case keyword.
+     */
+    private final Map<String, BitSet> containing = new HashMap<>();
+
+    private AttributeDictionary() {
+    }
+
+    /**
+     * Returns the code of a value, adding it to the dictionary if needed.
+     *
+     * @param value The value to encode
+     * @return The code of the value, or {@link #NULL_CODE} if the value is null
+     */
+    public synchronized int encode(String value) {
+        if (value == null) return NULL_CODE;
+        Integer code = codes.get(value);
+        if (code != null) return code;
+
+        int newCode = values.size();
+        values.add(value);
+        codes.put(value, newCode);
+        if (newCode == folds.length) {
+            int[] grown = new int[folds.length * 2];
+            System.arraycopy(folds, 0, grown, 0, folds.length);
+            folds = grown;
+        }
+        folds[newCode] = foldedCodes.computeIfAbsent(value.toLowerCase(Locale.ROOT), k -> newCode);
+        sortedValues = null;
+        containing.clear();
+        return newCode;
+    }
+
+    /**
+     * Returns the value identified by a code.
+     *
+     * @param code The code of the value
+     * @return The shared instance of the value, or null if the code is {@link #NULL_CODE}
+     */
+    public synchronized String decode(int code) {
+        return code == NULL_CODE ? null : values.get(code);
+    }
+
+    /**
+     * Returns the folded code of a code, shared by all the values differing only in case.
+     *
+     * @param code The code of the value
+     * @return The folded code, or {@link #NULL_CODE} if the code is {@link #NULL_CODE}
+     */
+    public synchronized int fold(int code) {
+        return code == NULL_CODE ? NULL_CODE : folds[code];
+    }
+
+    /**
+     * Looks up the folded code of a value, ignoring case, without adding it to the dictionary.
+     *
+     * @param value The value to look up
+     * @return The folded code of the value, or {@link #NULL_CODE} if the value is unknown
+     */
+    public synchronized int lookupIgnoreCase(String value) {
+        if (value == null) return NULL_CODE;
+        Integer code = codes.get(value);
+        if (code != null) return folds[code];
+        Integer folded = foldedCodes.get(value.toLowerCase(Locale.ROOT));
+        return folded != null ? folded : NULL_CODE;
+    }
+
+    /**
+     * Returns the codes of the values containing a keyword, ignoring case.
+     *
+     * @param keyword The keyword to search for
+     * @return The codes of the matching values; the returned set must not be modified
+     */
+    public synchronized BitSet containingIgnoreCase(String keyword) {
+        String lowerKeyword = keyword.toLowerCase(Locale.ROOT);
+        return containing.computeIfAbsent(lowerKeyword, k -> {
+            BitSet matching = new BitSet(values.size());
+            for (int code = 0; code < values.size(); code++) {
+                if (values.get(code).toLowerCase(Locale.ROOT).contains(k)) matching.set(code);
+            }
+            return matching;
+        });
+    }
+
+    /**
+     * Returns all the distinct values of the dictionary, sorted alphabetically.
+     *
+     * @return An unmodifiable list of the distinct values
+     */
+    public synchronized List<String> values() {
+        if (sortedValues == null) {
+            sortedValues = values.stream().sorted().toList();
+        }
+        return sortedValues;
+    }
+
+    /**
+     * Returns the number of distinct values of the dictionary.
+     *
+     * @return The number of distinct values
+     */
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * Splits a comma-separated list of facilities and encodes every facility.
+     *
+     * @param facilities The comma-separated facilities
+     * @return The codes of the facilities, in order of appearance
+     */
+    public static int[] encodeFacilities(String facilities) {
+        if (facilities == null || facilities.isBlank()) return new int[0];
+        String[] tokens = facilities.split(",");
+        int[] result = new int[tokens.length];
+        int count = 0;
+        for (String token : tokens) {
+            String facility = token.trim();
+            if (!facility.isEmpty()) result[count++] = FACILITIES.encode(facility);
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+}
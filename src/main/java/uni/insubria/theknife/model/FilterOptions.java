@@ -9,6 +9,9 @@ package uni.insubria.theknife.model;
 import lombok.*;
 import lombok.experimental.Accessors;
 
+import java.util.BitSet;
+import java.util.function.Predicate;
+
 /**
  * Represents the active set of filters applied by the user
  * to the list of restaurants in the application.
@@ -29,6 +32,21 @@ import lombok.experimental.Accessors;
 @ToString
 public class FilterOptions {
 
+    /**
+     * Value of a compiled condition that accepts every restaurant.
+     */
+    public static final int ANY = -2;
+
+    /**
+     * Keyword of the facilities offering delivery.
+     */
+    private static final String DELIVERY_KEYWORD = "delivery";
+
+    /**
+     * Keyword of the facilities offering online booking.
+     */
+    private static final String BOOKING_KEYWORD = "prenotazione";
+
     /**
      * The selected type of cuisine to filter by.
      * If null or equal to "Tutte le tipologie", all cuisines are allowed.
@@ -73,50 +91,38 @@ public class FilterOptions {
 
     /**
      * Checks whether a given restaurant matches all the active filter conditions.
+     * <p>
+     * This compiles the filters on every call: to filter many restaurants,
+     * {@link #compile()} the filters once and reuse the returned predicate.
+     * </p>
      *
      * @param r The restaurant to check
      * @return true if the restaurant matches all filters; false otherwise
      */
     public boolean matches(Restaurant r) {
+        return compile().test(r);
+    }
 
-        // Location (case-insensitive)
-        if (location != null && !location.isBlank() && !r.getLocation().equalsIgnoreCase(location)) {
-            return false;
-        }
-
-        // Tipologia cucina
-        if (cuisine != null && !cuisine.isBlank() && !r.getCuisine().equalsIgnoreCase(cuisine)) {
-            return false;
-        }
-
-        // Fascia di prezzo — match diretto su simbolo
-        if (price != null && !price.equals("Qualsiasi")
-                && !price.equalsIgnoreCase(r.getPrice())) {
-            return false;
-        }
-
-        // Rating — se vuoi implementarlo: parse "3★" in 3, ecc.
-        if (stars != null && !stars.equals("Qualsiasi")
-                && r.getReviews() != null && !r.getReviews().isEmpty()) {
-            int selectedStars = parseStars(stars);
-            double avg = r.getReviews().stream().mapToDouble(Review::getStars).average().orElse(0);
-            int flooredAvg = (int) Math.floor(avg);
-            if (flooredAvg != selectedStars) {
-                return false;
-            }
-        }
-
-        // Delivery
-        if (deliveryAvailable && !containsIgnoreCase(r.getFacilities(), "delivery")) {
-            return false;
-        }
-
-        // Prenotazione online
-        if (onlineBookingAvailable && !containsIgnoreCase(r.getFacilities(), "prenotazione")) {
-            return false;
-        }
-
-        return true;
+    /**
+     * Compiles the active filter conditions into an immutable predicate.
+     * <p>
+     * Filter values are resolved once against the attribute dictionaries and the star
+     * rating is parsed once, so testing a restaurant only compares integers. Facilities
+     * are encoded lazily, so the facility flags are resolved when they are used.
+     * </p>
+     *
+     * @return A predicate matching the restaurants that satisfy all the active filters
+     */
+    public Compiled compile() {
+        return new Compiled(
+                location != null && !location.isBlank() ? AttributeDictionary.LOCATIONS.lookupIgnoreCase(location) : ANY,
+                cuisine != null && !cuisine.isBlank() ? AttributeDictionary.CUISINES.lookupIgnoreCase(cuisine) : ANY,
+                // Fascia di prezzo — match diretto su simbolo
+                price != null && !price.equals("Qualsiasi") ? AttributeDictionary.PRICES.lookupIgnoreCase(price) : ANY,
+                // Rating — parse "3★" in 3, ecc.
+                stars != null && !stars.equals("Qualsiasi") ? parseStars(stars) : ANY,
+                deliveryAvailable,
+                onlineBookingAvailable);
     }
 
     private int parseStars(String starsStr) {
@@ -129,15 +135,97 @@ public class FilterOptions {
     }
 
     /**
-     * Case-insensitive search for a keyword inside a string.
+     * Immutable predicate compiled from a {@link FilterOptions}.
+     * <p>
+     * Location, cuisine and price are folded codes of the attribute dictionaries
+     * ({@link AttributeDictionary#NULL_CODE} if the filter value is unknown, so that no
+     * restaurant matches). The facility codes satisfying a flag are read from the dictionary
+     * every time, as facilities are only added to it when a restaurant or the index first
+     * needs them. Testing a restaurant does not allocate.
+     * </p>
      *
-     * @param text     The full text
-     * @param keyword  The word to search for
-     * @return true if found, false otherwise
+     * @param location  The folded location code, or {@link FilterOptions#ANY}
+     * @param cuisine   The folded cuisine code, or {@link FilterOptions#ANY}
+     * @param price     The folded price code, or {@link FilterOptions#ANY}
+     * @param stars     The required floored average rating, or {@link FilterOptions#ANY}
+     * @param delivery  Whether only restaurants offering delivery are accepted
+     * @param booking   Whether only restaurants offering online booking are accepted
      */
-    private boolean containsIgnoreCase(String text, String keyword) {
-        if (text == null || keyword == null) return false;
-        return text.toLowerCase().contains(keyword.toLowerCase());
+    public record Compiled(int location, int cuisine, int price, int stars,
+                           boolean delivery, boolean booking) implements Predicate<Restaurant> {
+
+        /**
+         * Returns the facility codes offering delivery, among the facilities encoded so far.
+         *
+         * @return The codes of the matching facilities; the returned set must not be modified
+         */
+        public BitSet deliveryCodes() {
+            return AttributeDictionary.FACILITIES.containingIgnoreCase(DELIVERY_KEYWORD);
+        }
+
+        /**
+         * Returns the facility codes offering online booking, among the facilities encoded so far.
+         *
+         * @return The codes of the matching facilities; the returned set must not be modified
+         */
+        public BitSet bookingCodes() {
+            return AttributeDictionary.FACILITIES.containingIgnoreCase(BOOKING_KEYWORD);
+        }
+
+        @Override
+        public boolean test(Restaurant r) {
+
+            // Location (case-insensitive)
+            if (location != ANY && !matchesCode(AttributeDictionary.LOCATIONS, r.getLocationCode(), location)) {
+                return false;
+            }
+
+            // Tipologia cucina
+            if (cuisine != ANY && !matchesCode(AttributeDictionary.CUISINES, r.getCuisineCode(), cuisine)) {
+                return false;
+            }
+
+            // Fascia di prezzo
+            if (price != ANY && !matchesCode(AttributeDictionary.PRICES, r.getPriceCode(), price)) {
+                return false;
+            }
+
+            // Rating
+            RatingSummary rating = r.getRating();
+            if (stars != ANY && rating != null && rating.getCount() > 0) {
+                int flooredAvg = (int) Math.floor(rating.average());
+                if (flooredAvg != stars) {
+                    return false;
+                }
+            }
+
+            // Encodes the facilities of the restaurant before reading the matching codes
+            if (delivery || booking) r.getFacilityCodes();
+
+            // Delivery
+            if (delivery && !r.hasAnyFacility(deliveryCodes())) {
+                return false;
+            }
+
+            // Prenotazione online
+            if (booking && !r.hasAnyFacility(bookingCodes())) {
+                return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * Compares a dictionary-encoded attribute with a resolved filter value.
+         *
+         * @param dictionary The dictionary of the attribute
+         * @param code       The code of the restaurant's value
+         * @param folded     The folded code of the value selected in the filter
+         * @return true if the values are equal ignoring case, false otherwise
+         */
+        private static boolean matchesCode(AttributeDictionary dictionary, int code, int folded) {
+            return folded != AttributeDictionary.NULL_CODE && dictionary.fold(code) == folded;
+        }
     }
 
 }
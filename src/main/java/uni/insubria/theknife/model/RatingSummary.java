@@ -0,0 +1,123 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.model;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running aggregates of the ratings received by a restaurant.
+ * <p>
+ * The summary keeps the number of reviews, the sum of their stars and a histogram
+ * of the reviews per star, so that the average rating is available in constant time
+ * without iterating over the reviews. It is updated by the reviews repository whenever
+ * a review is added, edited or deleted.
+ * </p>
+ */
+@Getter
+public class RatingSummary {
+
+    /**
+     * Highest number of stars a review can give.
+     */
+    public static final int MAX_STARS = 5;
+
+    /**
+     * Number of changes to any summary, used to tell when orders by rating are stale.
+     */
+    private static final AtomicLong version = new AtomicLong();
+
+    /**
+     * Default constructor for the RatingSummary class.
+     * <p>
+     * Creates an empty summary, with no reviews.
+     * </p>
+     */
+    public RatingSummary() {
+        // Default constructor - no reviews yet
+    }
+
+    /**
+     * The number of reviews.
+     */
+    private int count;
+
+    /**
+     * The sum of the stars of all reviews.
+     */
+    private long sum;
+
+    /**
+     * The number of reviews per star, indexed by number of stars (0 to {@link #MAX_STARS}).
+     */
+    @Getter(AccessLevel.NONE)
+    private final int[] histogram = new int[MAX_STARS + 1];
+
+    /**
+     * Adds a rating to the summary.
+     *
+     * @param stars The stars given by the review
+     */
+    public synchronized void add(int stars) {
+        count++;
+        sum += stars;
+        histogram[bucket(stars)]++;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Removes a rating from the summary.
+     *
+     * @param stars The stars given by the removed review
+     */
+    public synchronized void remove(int stars) {
+        count--;
+        sum -= stars;
+        histogram[bucket(stars)]--;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Returns the average rating.
+     *
+     * @return The average number of stars, or 0 if there are no reviews
+     */
+    public synchronized double average() {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the number of reviews that gave a certain number of stars.
+     *
+     * @param stars The number of stars
+     * @return The number of reviews with the given stars
+     */
+    public synchronized int countOf(int stars) {
+        return histogram[bucket(stars)];
+    }
+
+    /**
+     * Returns the number of changes made so far to any rating summary.
+     *
+     * @return A counter increasing with every added or removed rating
+     */
+    public static long version() {
+        return version.get();
+    }
+
+    /**
+     * Clamps a number of stars to a valid histogram bucket.
+     *
+     * @param stars The number of stars
+     * @return The index of the histogram bucket
+     */
+    private static int bucket(int stars) {
+        return Math.max(0, Math.min(MAX_STARS, stars));
+    }
+}
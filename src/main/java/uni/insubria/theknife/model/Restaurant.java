@@ -6,12 +6,14 @@ Morosini Luca 760029 VA
 */
 package uni.insubria.theknife.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.opencsv.bean.CsvBindByName;
 import lombok.*;
 import lombok.experimental.Accessors;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Objects;
 
@@ -43,6 +45,13 @@ public class Restaurant {
     public Restaurant() {
         // Default constructor - fields will be initialized with default values
     }
+
+    /**
+     * Code marking a dictionary-encoded attribute whose code has not been resolved yet,
+     * e.g. because the field was bound directly by OpenCSV.
+     */
+    private static final int UNRESOLVED_CODE = -2;
+
     /**
      * The unique identifier for this restaurant.
      * This field is used for equality checks.
@@ -68,18 +77,42 @@ public class Restaurant {
     @CsvBindByName(column = "Location")
     String location;
 
+    /**
+     * The dictionary code of the location, see {@link AttributeDictionary#LOCATIONS}.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @JsonIgnore
+    int locationCode = UNRESOLVED_CODE;
+
     /**
      * The price range or category of the restaurant.
      */
     @CsvBindByName(column = "Price")
     String price;
 
+    /**
+     * The dictionary code of the price range, see {@link AttributeDictionary#PRICES}.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @JsonIgnore
+    int priceCode = UNRESOLVED_CODE;
+
     /**
      * The type of cuisine offered by the restaurant.
      */
     @CsvBindByName(column = "Cuisine")
     String cuisine;
 
+    /**
+     * The dictionary code of the cuisine, see {@link AttributeDictionary#CUISINES}.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @JsonIgnore
+    int cuisineCode = UNRESOLVED_CODE;
+
     /**
      * The longitude coordinate of the restaurant's location.
      */
@@ -100,12 +133,14 @@ public class Restaurant {
 
     /**
      * The URL to the restaurant's page on the Michelin website.
+     * Lazily loaded from the {@link #detailsSource}, if any.
      */
     @CsvBindByName(column = "Url")
     String michelinUrl;
 
     /**
      * The URL to the restaurant's official website.
+     * Lazily loaded from the {@link #detailsSource}, if any.
      */
     @CsvBindByName(column = "WebsiteUrl")
     String websiteUrl;
@@ -116,6 +151,14 @@ public class Restaurant {
     @CsvBindByName(column = "Award")
     String award;
 
+    /**
+     * The dictionary code of the award, see {@link AttributeDictionary#AWARDS}.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @JsonIgnore
+    int awardCode = UNRESOLVED_CODE;
+
     /**
      * The number of Michelin Green Stars awarded to the restaurant for sustainability.
      */
@@ -124,16 +167,44 @@ public class Restaurant {
 
     /**
      * The facilities and services offered by the restaurant.
+     * Lazily loaded from the {@link #detailsSource}, if any.
      */
     @CsvBindByName(column = "FacilitiesAndServices")
     String facilities;
 
+    /**
+     * The dictionary codes of the single facilities, see {@link AttributeDictionary#FACILITIES},
+     * or null if they have not been resolved yet.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @JsonIgnore
+    int[] facilityCodes;
+
     /**
      * A detailed description of the restaurant.
+     * Lazily loaded from the {@link #detailsSource}, if any.
      */
     @CsvBindByName(column = "Description")
     String description;
 
+    /**
+     * The source the long text fields are read from on first access, or null if they
+     * are held directly by this object (e.g. restaurants imported from CSV or edited).
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @JsonIgnore
+    DetailsSource detailsSource;
+
+    /**
+     * The row of this restaurant in the {@link #detailsSource}.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @JsonIgnore
+    int detailsRow;
+
     /**
      * The calculated distance from a reference point to this restaurant in kilometers.
      */
@@ -144,11 +215,287 @@ public class Restaurant {
      */
     List<Review> reviews = new ArrayList<>();
 
+    /**
+     * The running aggregates of the ratings of this restaurant, maintained by the reviews repository.
+     */
+    @JsonIgnore
+    RatingSummary rating = new RatingSummary();
+
     /**
      * The user who owns or manages this restaurant, if applicable.
      */
     User user = null;
 
+    /**
+     * Sets the location, sharing the value through {@link AttributeDictionary#LOCATIONS}.
+     *
+     * @param location The city or location where the restaurant is situated
+     * @return This restaurant
+     */
+    public Restaurant setLocation(String location) {
+        this.locationCode = AttributeDictionary.LOCATIONS.encode(location);
+        this.location = AttributeDictionary.LOCATIONS.decode(locationCode);
+        return this;
+    }
+
+    /**
+     * Returns the dictionary code of the location.
+     *
+     * @return The code of the location in {@link AttributeDictionary#LOCATIONS}
+     */
+    @JsonIgnore
+    public int getLocationCode() {
+        if (locationCode == UNRESOLVED_CODE) setLocation(location);
+        return locationCode;
+    }
+
+    /**
+     * Sets the price range, sharing the value through {@link AttributeDictionary#PRICES}.
+     *
+     * @param price The price range or category of the restaurant
+     * @return This restaurant
+     */
+    public Restaurant setPrice(String price) {
+        this.priceCode = AttributeDictionary.PRICES.encode(price);
+        this.price = AttributeDictionary.PRICES.decode(priceCode);
+        return this;
+    }
+
+    /**
+     * Returns the dictionary code of the price range.
+     *
+     * @return The code of the price range in {@link AttributeDictionary#PRICES}
+     */
+    @JsonIgnore
+    public int getPriceCode() {
+        if (priceCode == UNRESOLVED_CODE) setPrice(price);
+        return priceCode;
+    }
+
+    /**
+     * Sets the cuisine, sharing the value through {@link AttributeDictionary#CUISINES}.
+     *
+     * @param cuisine The type of cuisine offered by the restaurant
+     * @return This restaurant
+     */
+    public Restaurant setCuisine(String cuisine) {
+        this.cuisineCode = AttributeDictionary.CUISINES.encode(cuisine);
+        this.cuisine = AttributeDictionary.CUISINES.decode(cuisineCode);
+        return this;
+    }
+
+    /**
+     * Returns the dictionary code of the cuisine.
+     *
+     * @return The code of the cuisine in {@link AttributeDictionary#CUISINES}
+     */
+    @JsonIgnore
+    public int getCuisineCode() {
+        if (cuisineCode == UNRESOLVED_CODE) setCuisine(cuisine);
+        return cuisineCode;
+    }
+
+    /**
+     * Sets the award, sharing the value through {@link AttributeDictionary#AWARDS}.
+     *
+     * @param award The Michelin award or recognition received by the restaurant
+     * @return This restaurant
+     */
+    public Restaurant setAward(String award) {
+        this.awardCode = AttributeDictionary.AWARDS.encode(award);
+        this.award = AttributeDictionary.AWARDS.decode(awardCode);
+        return this;
+    }
+
+    /**
+     * Returns the dictionary code of the award.
+     *
+     * @return The code of the award in {@link AttributeDictionary#AWARDS}
+     */
+    @JsonIgnore
+    public int getAwardCode() {
+        if (awardCode == UNRESOLVED_CODE) setAward(award);
+        return awardCode;
+    }
+
+    /**
+     * Returns the dictionary codes of the single facilities, resolving them on first access.
+     * <p>
+     * Only the facilities are read from the details source, not the other long text fields.
+     * </p>
+     *
+     * @return The codes of the facilities in {@link AttributeDictionary#FACILITIES}
+     */
+    @JsonIgnore
+    public int[] getFacilityCodes() {
+        if (facilityCodes == null) {
+            facilityCodes = AttributeDictionary.encodeFacilities(
+                    detailsSource != null ? detailsSource.facilities(detailsRow) : facilities);
+        }
+        return facilityCodes;
+    }
+
+    /**
+     * Checks whether the restaurant offers at least one of the given facilities.
+     *
+     * @param codes The codes of the facilities in {@link AttributeDictionary#FACILITIES}
+     * @return true if one of the facilities of the restaurant is in the given set; false otherwise
+     */
+    public boolean hasAnyFacility(BitSet codes) {
+        for (int code : getFacilityCodes()) {
+            if (codes.get(code)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Binds the long text fields of this restaurant to a lazy source.
+     *
+     * @param source The source the long text fields are read from on first access
+     * @param row    The row of this restaurant in the source
+     * @return This restaurant
+     */
+    public Restaurant setDetailsSource(DetailsSource source, int row) {
+        this.detailsSource = source;
+        this.detailsRow = row;
+        this.facilityCodes = null;
+        return this;
+    }
+
+    /**
+     * Returns the Michelin URL, loading it from the details source if needed.
+     *
+     * @return The URL to the restaurant's page on the Michelin website
+     */
+    public String getMichelinUrl() {
+        return detailsSource != null ? detailsSource.load(detailsRow).michelinUrl() : michelinUrl;
+    }
+
+    /**
+     * Returns the website URL, loading it from the details source if needed.
+     *
+     * @return The URL to the restaurant's official website
+     */
+    public String getWebsiteUrl() {
+        return detailsSource != null ? detailsSource.load(detailsRow).websiteUrl() : websiteUrl;
+    }
+
+    /**
+     * Returns the facilities, loading them from the details source if needed.
+     *
+     * @return The facilities and services offered by the restaurant
+     */
+    public String getFacilities() {
+        return detailsSource != null ? detailsSource.load(detailsRow).facilities() : facilities;
+    }
+
+    /**
+     * Returns the description, loading it from the details source if needed.
+     *
+     * @return A detailed description of the restaurant
+     */
+    public String getDescription() {
+        return detailsSource != null ? detailsSource.load(detailsRow).description() : description;
+    }
+
+    /**
+     * Sets the Michelin URL, detaching the long text fields from their source.
+     *
+     * @param michelinUrl The URL to the restaurant's page on the Michelin website
+     * @return This restaurant
+     */
+    public Restaurant setMichelinUrl(String michelinUrl) {
+        detachDetails();
+        this.michelinUrl = michelinUrl;
+        return this;
+    }
+
+    /**
+     * Sets the website URL, detaching the long text fields from their source.
+     *
+     * @param websiteUrl The URL to the restaurant's official website
+     * @return This restaurant
+     */
+    public Restaurant setWebsiteUrl(String websiteUrl) {
+        detachDetails();
+        this.websiteUrl = websiteUrl;
+        return this;
+    }
+
+    /**
+     * Sets the facilities, detaching the long text fields from their source.
+     *
+     * @param facilities The facilities and services offered by the restaurant
+     * @return This restaurant
+     */
+    public Restaurant setFacilities(String facilities) {
+        detachDetails();
+        this.facilities = facilities;
+        this.facilityCodes = null;
+        return this;
+    }
+
+    /**
+     * Sets the description, detaching the long text fields from their source.
+     *
+     * @param description A detailed description of the restaurant
+     * @return This restaurant
+     */
+    public Restaurant setDescription(String description) {
+        detachDetails();
+        this.description = description;
+        return this;
+    }
+
+    /**
+     * Copies the long text fields from the details source into this object, so that
+     * they can be modified independently of the backing file.
+     */
+    private void detachDetails() {
+        if (detailsSource == null) return;
+        Details details = detailsSource.load(detailsRow);
+        michelinUrl = details.michelinUrl();
+        websiteUrl = details.websiteUrl();
+        facilities = details.facilities();
+        description = details.description();
+        detailsSource = null;
+    }
+
+    /**
+     * The long text fields of a restaurant, which are only needed by the detail view.
+     *
+     * @param michelinUrl The URL to the restaurant's page on the Michelin website
+     * @param websiteUrl  The URL to the restaurant's official website
+     * @param facilities  The facilities and services offered by the restaurant
+     * @param description A detailed description of the restaurant
+     */
+    public record Details(String michelinUrl, String websiteUrl, String facilities, String description) {
+    }
+
+    /**
+     * Source of the long text fields of the restaurants, e.g. a snapshot file.
+     */
+    @FunctionalInterface
+    public interface DetailsSource {
+        /**
+         * Loads the long text fields of a restaurant.
+         *
+         * @param row The row of the restaurant in the source
+         * @return The long text fields of the restaurant
+         */
+        Details load(int row);
+
+        /**
+         * Loads only the facilities of a restaurant, e.g. to index them.
+         *
+         * @param row The row of the restaurant in the source
+         * @return The facilities and services offered by the restaurant
+         */
+        default String facilities(int row) {
+            return load(row).facilities();
+        }
+    }
+
     /**
      * Represents geographical coordinates for a restaurant location.
      * <p>
@@ -0,0 +1,71 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+
+/**
+ * JSON encoding of a restaurant referenced by another entity, as its ID only.
+ * <p>
+ * A reference is written as the ID string of the restaurant and read back as a
+ * placeholder restaurant holding only the ID, to be resolved against the catalogue
+ * (see {@code UserRepository}). Restaurants embedded as whole objects, as they were
+ * written before, are read as references to their ID.
+ * </p>
+ */
+public final class RestaurantReference {
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private RestaurantReference() {
+        // This constructor is not meant to be called
+    }
+
+    /**
+     * Writes a restaurant as its ID.
+     */
+    public static class Serializer extends JsonSerializer<Restaurant> {
+        /**
+         * Default constructor, used by Jackson.
+         */
+        public Serializer() {
+            // Stateless
+        }
+
+        @Override
+        public void serialize(Restaurant restaurant, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeString(restaurant.getId());
+        }
+    }
+
+    /**
+     * Reads a restaurant ID, or a whole restaurant object, as a placeholder restaurant.
+     */
+    public static class Deserializer extends JsonDeserializer<Restaurant> {
+        /**
+         * Default constructor, used by Jackson.
+         */
+        public Deserializer() {
+            // Stateless
+        }
+
+        @Override
+        public Restaurant deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonNode node = context.readTree(parser);
+            String id = node.isTextual() ? node.asText() : node.path("id").asText(null);
+            return id == null ? null : new Restaurant().setId(id);
+        }
+    }
+}
@@ -92,8 +92,11 @@ public class User {
     private Role role;
 
     /**
-     * The set of restaurants owned by this user.
-     * Only relevant for users with the RISTORATORE role.
+     * The set of restaurants owned by this user (RISTORATORE role) or saved as
+     * favorites (CLIENTE role).
+     * Stored as the IDs of the restaurants, see {@link RestaurantReference}.
      */
+    @JsonSerialize(contentUsing = RestaurantReference.Serializer.class)
+    @JsonDeserialize(contentUsing = RestaurantReference.Deserializer.class)
     private HashSet<Restaurant> restaurants = new HashSet<>();
 }
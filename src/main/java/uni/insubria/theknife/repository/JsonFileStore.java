@@ -0,0 +1,160 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Store keeping all its entries in a single JSON object, the format the TheKnife data files
+ * were written in before the {@link LogStructuredStore}.
+ * <p>
+ * The file is read once, on first access, and rewritten entirely through the {@link SnapshotWriter}
+ * after every change, so it is only suited to small data sets. It is used to import the
+ * existing JSON files into the default store, and can still be selected as the store of the
+ * application (see {@link Stores}).
+ * </p>
+ *
+ * @param <V> The type of the values
+ */
+public class JsonFileStore<V> implements Store<String, V> {
+
+    /**
+     * The path of the JSON file.
+     */
+    private final String path;
+
+    /**
+     * Reader binding the file to a map of values.
+     */
+    private final ObjectReader reader;
+
+    /**
+     * Writer of the whole map of values.
+     */
+    private final ObjectWriter writer;
+
+    /**
+     * The entries of the file, or null if not read yet.
+     */
+    private Map<String, V> entries = null;
+
+    /**
+     * Creates a store on a JSON file; the file is not read until needed.
+     *
+     * @param path         The path of the JSON file
+     * @param objectMapper The mapper used to read and write the values
+     * @param type         The class of the values
+     */
+    public JsonFileStore(String path, ObjectMapper objectMapper, Class<V> type) {
+        this.path = path;
+        this.reader = objectMapper.readerFor(objectMapper.getTypeFactory().constructMapType(TreeMap.class, String.class, type));
+        this.writer = objectMapper.writer().withDefaultPrettyPrinter();
+    }
+
+    /**
+     * Tells whether the JSON file exists.
+     *
+     * @return true if the file or one of its previous generations exists
+     */
+    public boolean exists() {
+        return SnapshotWriter.exists(path);
+    }
+
+    @Override
+    public synchronized V get(String key) throws IOException {
+        return entries().get(key);
+    }
+
+    @Override
+    public synchronized void put(String key, V value) throws IOException {
+        V previous = entries().put(key, value);
+        try {
+            write();
+        } catch (IOException e) {
+            if (previous == null) entries.remove(key);
+            else entries.put(key, previous);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) throws IOException {
+        V previous = entries().remove(key);
+        if (previous == null) return;
+        try {
+            write();
+        } catch (IOException e) {
+            entries.put(key, previous);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void putAll(Map<? extends String, ? extends V> values) throws IOException {
+        Map<String, V> previous = new TreeMap<>(entries());
+        entries.putAll(values);
+        try {
+            write();
+        } catch (IOException e) {
+            entries = previous;
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void forEach(BiConsumer<? super String, ? super V> action) throws IOException {
+        entries().forEach(action);
+    }
+
+    @Override
+    public synchronized boolean isEmpty() throws IOException {
+        return entries().isEmpty();
+    }
+
+    @Override
+    public synchronized void clear() throws IOException {
+        Map<String, V> previous = entries();
+        entries = new TreeMap<>();
+        try {
+            write();
+        } catch (IOException e) {
+            entries = previous;
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the entries of the file, reading it if needed.
+     *
+     * @return The entries, in key order
+     * @throws IOException If the file exists but no generation of it can be read
+     */
+    private Map<String, V> entries() throws IOException {
+        if (entries == null) {
+            Map<String, V> read = new TreeMap<>();
+            if (exists()) read = SnapshotWriter.read(path, reader::readValue);
+            entries = read;
+        }
+        return entries;
+    }
+
+    /**
+     * Rewrites the whole file.
+     *
+     * @throws IOException If an I/O error occurs; the current file is left untouched in that case
+     */
+    private void write() throws IOException {
+        SnapshotWriter.write(path, out -> writer.writeValue(out, entries));
+    }
+}
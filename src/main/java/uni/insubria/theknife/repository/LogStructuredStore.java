@@ -0,0 +1,1058 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded log-structured key-value store, running on the files of a single directory.
+ * <p>
+ * Writes go to an in-memory sorted table (the memtable) and are made durable by appending
+ * them to a write-ahead log ({@code wal.log}), so that the cost of a write does not depend
+ * on the size of the store. When the memtable grows past {@link #MEMTABLE_LIMIT} bytes it is
+ * flushed to a new immutable segment file, sorted by key, and the log is emptied. Deleted
+ * keys are written as tombstones, which hide the older values of the key.
+ * </p>
+ * <p>
+ * A lookup checks the memtable and then the segments from the newest to the oldest. Every
+ * segment ends with a sparse index (one key every {@link #INDEX_INTERVAL} entries) and a
+ * Bloom filter of its keys, both kept in memory: a segment is only read if its filter may
+ * contain the key, and then only the small block the index points to. The cost of a lookup
+ * therefore does not depend on the number of entries. Once there are more than
+ * {@link #MAX_SEGMENTS} segments they are merged into a single one, dropping the overwritten
+ * values and the tombstones.
+ * </p>
+ * <p>
+ * The list of live segments is kept in a {@code MANIFEST} file, replaced atomically after
+ * every flush and compaction; files not listed in it are leftovers of an interrupted
+ * flush or compaction and are deleted when the store is opened. A truncated record at the
+ * end of the log (e.g. after a crash) is discarded.
+ * </p>
+ * <p>
+ * The store holds a lock on a {@code LOCK} file of its directory until it is closed, so that
+ * a second process cannot open the same directory and delete the files still being written
+ * by the first one as leftovers.
+ * </p>
+ *
+ * @param <V> The type of the values
+ */
+@Slf4j
+public class LogStructuredStore<V> implements Store<String, V> {
+
+    /**
+     * Conversion of the values to and from bytes.
+     *
+     * @param <V> The type of the values
+     */
+    public interface Codec<V> {
+        /**
+         * Encodes a value.
+         *
+         * @param value The value
+         * @return The bytes of the value
+         * @throws IOException If the value cannot be encoded
+         */
+        byte[] encode(V value) throws IOException;
+
+        /**
+         * Decodes a value.
+         *
+         * @param bytes The bytes of the value
+         * @return The value
+         * @throws IOException If the bytes are not a valid value
+         */
+        V decode(byte[] bytes) throws IOException;
+    }
+
+    /**
+     * Size of the memtable, in bytes, above which it is flushed to a segment.
+     */
+    private static final int MEMTABLE_LIMIT = 1 << 20;
+
+    /**
+     * Number of segments above which they are merged into one.
+     */
+    private static final int MAX_SEGMENTS = 4;
+
+    /**
+     * Number of entries of a segment between two keys of its sparse index.
+     */
+    private static final int INDEX_INTERVAL = 16;
+
+    /**
+     * Magic number ending every segment file ("TKS2").
+     */
+    private static final int SEGMENT_MAGIC = 0x544B5332;
+
+    /**
+     * Size of the footer of a segment: index offset, Bloom filter offset, index size, entry count, magic number.
+     */
+    private static final int FOOTER_BYTES = 2 * Long.BYTES + 3 * Integer.BYTES;
+
+    /**
+     * Bits of the Bloom filter of a segment per entry, for about 1% of false positives.
+     */
+    private static final int BLOOM_BITS_PER_KEY = 10;
+
+    /**
+     * Number of bits set in the Bloom filter for every key.
+     */
+    private static final int BLOOM_HASHES = 7;
+
+    /**
+     * Value length written for a tombstone.
+     */
+    private static final int TOMBSTONE_LENGTH = -1;
+
+    /**
+     * Marker of a deleted key in the memtable and in the merged entries, compared by identity.
+     */
+    private static final byte[] TOMBSTONE = new byte[0];
+
+    /**
+     * Name of the file listing the live segments.
+     */
+    private static final String MANIFEST = "MANIFEST";
+
+    /**
+     * Name of the write-ahead log.
+     */
+    private static final String WAL = "wal.log";
+
+    /**
+     * Name of the file locked while the store is open.
+     */
+    private static final String LOCK = "LOCK";
+
+    /**
+     * Prefix of the segment file names, followed by the segment number.
+     */
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    /**
+     * Suffix of the segment file names.
+     */
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    /**
+     * Suffix of the files being written, renamed once complete.
+     */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * The directory of the store.
+     */
+    private final Path directory;
+
+    /**
+     * The conversion of the values.
+     */
+    private final Codec<V> codec;
+
+    /**
+     * The channel of the lock file, holding the lock of the directory.
+     */
+    private final FileChannel lockChannel;
+
+    /**
+     * Writes not yet flushed to a segment, by key; deleted keys map to {@link #TOMBSTONE}.
+     */
+    private final TreeMap<String, byte[]> memtable = new TreeMap<>();
+
+    /**
+     * Approximate size of the memtable, in bytes.
+     */
+    private long memtableBytes = 0;
+
+    /**
+     * The live segments, oldest first.
+     */
+    private final List<Segment> segments = new ArrayList<>();
+
+    /**
+     * Number of the next segment file.
+     */
+    private int nextSegment = 0;
+
+    /**
+     * Opens the store in a directory, creating it if needed.
+     *
+     * @param directory The directory of the store
+     * @param codec     The conversion of the values
+     * @throws IOException If the files of the store cannot be read, or if the store is already open
+     */
+    public LogStructuredStore(Path directory, Codec<V> codec) throws IOException {
+        this.directory = directory;
+        this.codec = codec;
+        Files.createDirectories(directory);
+        this.lockChannel = lock(directory);
+        try {
+            open();
+        } catch (IOException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Releases the lock of the directory. The store must not be used afterwards.
+     *
+     * @throws IOException If an I/O error occurs while releasing the lock
+     */
+    public synchronized void close() throws IOException {
+        // Closing the channel releases the lock
+        lockChannel.close();
+    }
+
+    @Override
+    public synchronized V get(String key) throws IOException {
+        byte[] value = memtable.get(key);
+        for (int i = segments.size() - 1; value == null && i >= 0; i--) {
+            value = segments.get(i).get(key);
+        }
+        return value == null || value == TOMBSTONE ? null : codec.decode(value);
+    }
+
+    @Override
+    public synchronized void put(String key, V value) throws IOException {
+        write(key, codec.encode(value));
+    }
+
+    @Override
+    public synchronized void remove(String key) throws IOException {
+        write(key, TOMBSTONE);
+    }
+
+    @Override
+    public synchronized void forEach(BiConsumer<? super String, ? super V> action) throws IOException {
+        merge(sources(true), true, (key, value) -> {
+            action.accept(key, codec.decode(value));
+            return true;
+        });
+    }
+
+    @Override
+    public synchronized boolean isEmpty() throws IOException {
+        boolean[] empty = {true};
+        merge(sources(true), true, (key, value) -> empty[0] = false);
+        return empty[0];
+    }
+
+    @Override
+    public synchronized void clear() throws IOException {
+        List<Segment> dropped = new ArrayList<>(segments);
+        segments.clear();
+        // The segments go first: if the log survives a crash, it only holds the newest writes
+        try {
+            writeManifest();
+        } catch (IOException e) {
+            segments.addAll(dropped);
+            throw e;
+        }
+        Files.deleteIfExists(directory.resolve(WAL));
+        syncDirectory();
+        memtable.clear();
+        memtableBytes = 0;
+        for (Segment segment : dropped) Files.deleteIfExists(segment.path);
+    }
+
+    /**
+     * Writes all the entries of the memtable to a new segment and empties the write-ahead log.
+     *
+     * @throws IOException If an I/O error occurs; the entries stay in the memtable and in the log in that case
+     */
+    public synchronized void flush() throws IOException {
+        if (memtable.isEmpty()) return;
+        // Tombstones are only needed while an older segment may still hold the key
+        Segment segment = writeSegment(List.of(new MemtableCursor()), segments.isEmpty(), memtable.size());
+        segments.add(segment);
+        writeManifest();
+        Files.deleteIfExists(directory.resolve(WAL));
+        memtable.clear();
+        memtableBytes = 0;
+
+        if (segments.size() > MAX_SEGMENTS) compact();
+    }
+
+    /**
+     * Merges all the segments into one, dropping overwritten values and tombstones.
+     *
+     * @throws IOException If an I/O error occurs; the current segments stay in use in that case
+     */
+    public synchronized void compact() throws IOException {
+        if (segments.size() < 2) return;
+        int entries = 0;
+        for (Segment segment : segments) entries += segment.count;
+        Segment merged = writeSegment(sources(false), true, entries);
+        List<Segment> dropped = new ArrayList<>(segments);
+        segments.clear();
+        segments.add(merged);
+        writeManifest();
+        for (Segment segment : dropped) Files.deleteIfExists(segment.path);
+    }
+
+    //#region Opening
+
+    /**
+     * Takes the lock of the directory of a store.
+     *
+     * @param directory The directory of the store
+     * @return The channel of the lock file, holding the lock
+     * @throws IOException If the lock file cannot be opened, or if the lock is already held
+     */
+    private static FileChannel lock(Path directory) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another store of this process
+            lock = null;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException("The store in " + directory + " is already open in another process or store");
+        }
+        return channel;
+    }
+
+    /**
+     * Loads the segments listed in the manifest, deletes the leftover files and replays the write-ahead log.
+     *
+     * @throws IOException If the files of the store cannot be read
+     */
+    private void open() throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        Set<String> live = new HashSet<>();
+        if (Files.exists(manifest)) {
+            for (String name : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                if (name.isBlank()) continue;
+                segments.add(Segment.open(directory.resolve(name.trim())));
+                live.add(name.trim());
+            }
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int end = name.indexOf('.', SEGMENT_PREFIX.length());
+                if (name.startsWith(SEGMENT_PREFIX) && end > 0) {
+                    try {
+                        nextSegment = Math.max(nextSegment, Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), end)) + 1);
+                    } catch (NumberFormatException e) {
+                        // Not a file of the store
+                    }
+                }
+                if (name.endsWith(TMP_SUFFIX) || (name.startsWith(SEGMENT_PREFIX) && !live.contains(name))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        replayWal();
+    }
+
+    /**
+     * Loads the write-ahead log into the memtable, truncating it after the last complete record.
+     *
+     * @throws IOException If the log cannot be read
+     */
+    private void replayWal() throws IOException {
+        Path wal = directory.resolve(WAL);
+        if (!Files.exists(wal)) return;
+
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(wal)))) {
+            while (true) {
+                int checksum = in.readInt();
+                int keyLength = in.readInt();
+                byte[] key = in.readNBytes(keyLength);
+                int valueLength = in.readInt();
+                byte[] value = valueLength == TOMBSTONE_LENGTH ? TOMBSTONE : in.readNBytes(valueLength);
+                if (key.length != keyLength || (value != TOMBSTONE && value.length != valueLength)
+                        || checksum != checksum(key, value)) {
+                    break;
+                }
+                memtablePut(new String(key, StandardCharsets.UTF_8), value);
+                valid += 3L * Integer.BYTES + keyLength + value.length;
+            }
+        } catch (EOFException | IllegalArgumentException e) {
+            // Truncated record at the end of the log
+        }
+
+        if (valid < Files.size(wal)) {
+            log.warn("Discarding truncated records of {}", wal);
+            try (FileChannel channel = FileChannel.open(wal, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        }
+    }
+
+    //#endregion
+
+    //#region Writing
+
+    /**
+     * Records a write in the log and in the memtable, flushing the memtable if it is full.
+     *
+     * @param key   The key
+     * @param value The encoded value, or {@link #TOMBSTONE}
+     * @throws IOException If the write cannot be made durable
+     */
+    private void write(String key, byte[] value) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        encodeRecord(new DataOutputStream(records), key, value);
+        append(records);
+        memtablePut(key, value);
+        flushIfFull();
+    }
+
+    @Override
+    public synchronized void putAll(Map<? extends String, ? extends V> entries) throws IOException {
+        // One append and one sync of the log for the whole batch
+        Map<String, byte[]> encoded = new TreeMap<>();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        for (Map.Entry<? extends String, ? extends V> entry : entries.entrySet()) {
+            byte[] value = codec.encode(entry.getValue());
+            encodeRecord(out, entry.getKey(), value);
+            encoded.put(entry.getKey(), value);
+        }
+        append(records);
+        encoded.forEach(this::memtablePut);
+        flushIfFull();
+    }
+
+    /**
+     * Encodes a record of the write-ahead log.
+     *
+     * @param out   The stream receiving the record
+     * @param key   The key
+     * @param value The encoded value, or {@link #TOMBSTONE}
+     * @throws IOException If an I/O error occurs while writing to the stream
+     */
+    private static void encodeRecord(DataOutputStream out, String key, byte[] value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(checksum(keyBytes, value));
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+        out.writeInt(value == TOMBSTONE ? TOMBSTONE_LENGTH : value.length);
+        out.write(value);
+    }
+
+    /**
+     * Appends records to the write-ahead log and waits until they are on disk.
+     *
+     * @param records The encoded records
+     * @throws IOException If the records cannot be made durable
+     */
+    private void append(ByteArrayOutputStream records) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(directory.resolve(WAL).toFile(), true)) {
+            records.writeTo(fos);
+            fos.getFD().sync();
+        }
+    }
+
+    /**
+     * Flushes the memtable if it has grown past {@link #MEMTABLE_LIMIT}.
+     */
+    private void flushIfFull() {
+        if (memtableBytes < MEMTABLE_LIMIT) return;
+        try {
+            flush();
+        } catch (IOException e) {
+            // The writes are already durable in the log, the flush will be retried on the next write
+            log.error("Error flushing the memtable of {}", directory, e);
+        }
+    }
+
+    /**
+     * Puts an entry in the memtable, keeping its size up to date.
+     *
+     * @param key   The key
+     * @param value The encoded value, or {@link #TOMBSTONE}
+     */
+    private void memtablePut(String key, byte[] value) {
+        byte[] previous = memtable.put(key, value);
+        if (previous == null) memtableBytes += 2L * key.length() + Integer.BYTES;
+        else memtableBytes -= previous.length;
+        memtableBytes += value.length;
+    }
+
+    /**
+     * Computes the checksum of a log record.
+     *
+     * @param key   The encoded key
+     * @param value The encoded value, or {@link #TOMBSTONE}
+     * @return The checksum
+     */
+    private static int checksum(byte[] key, byte[] value) {
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(value == TOMBSTONE ? TOMBSTONE_LENGTH : value.length);
+        crc.update(value);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Writes the merged entries of some sources to a new segment file.
+     *
+     * @param sources        The cursors to merge, oldest first
+     * @param dropTombstones Whether the tombstones can be left out
+     * @param expected       The maximum number of entries of the segment, to size its Bloom filter
+     * @return The new segment
+     * @throws IOException If an I/O error occurs while writing
+     */
+    private Segment writeSegment(List<Cursor> sources, boolean dropTombstones, int expected) throws IOException {
+        String name = SEGMENT_PREFIX + nextSegment++ + SEGMENT_SUFFIX;
+        Path file = directory.resolve(name);
+        Path tmp = directory.resolve(name + TMP_SUFFIX);
+
+        List<String> indexKeys = new ArrayList<>();
+        List<Long> indexOffsets = new ArrayList<>();
+        Bloom bloom = new Bloom(expected);
+        long[] offset = {0};
+        int[] count = {0};
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            merge(sources, dropTombstones, (key, value) -> {
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                if (count[0] % INDEX_INTERVAL == 0) {
+                    indexKeys.add(key);
+                    indexOffsets.add(offset[0]);
+                }
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.writeInt(value == TOMBSTONE ? TOMBSTONE_LENGTH : value.length);
+                out.write(value);
+                offset[0] += 2L * Integer.BYTES + keyBytes.length + value.length;
+                bloom.add(key);
+                count[0]++;
+                return true;
+            });
+
+            long indexOffset = offset[0];
+            long bloomOffset = indexOffset;
+            for (int i = 0; i < indexKeys.size(); i++) {
+                byte[] keyBytes = indexKeys.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.writeLong(indexOffsets.get(i));
+                bloomOffset += Integer.BYTES + keyBytes.length + Long.BYTES;
+            }
+            for (long word : bloom.words) out.writeLong(word);
+            out.writeLong(indexOffset);
+            out.writeLong(bloomOffset);
+            out.writeInt(indexKeys.size());
+            out.writeInt(count[0]);
+            out.writeInt(SEGMENT_MAGIC);
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        long[] offsets = new long[indexOffsets.size()];
+        for (int i = 0; i < offsets.length; i++) offsets[i] = indexOffsets.get(i);
+        return new Segment(file, indexKeys.toArray(new String[0]), offsets, bloom, offset[0], count[0]);
+    }
+
+    /**
+     * Atomically replaces the manifest with the list of the current segments.
+     *
+     * @throws IOException If an I/O error occurs; the previous manifest is left untouched in that case
+     */
+    private void writeManifest() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (Segment segment : segments) content.append(segment.path.getFileName()).append('\n');
+
+        Path tmp = directory.resolve(MANIFEST + TMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // Makes the renames of the manifest and of the new segments durable before the log or the old segments go
+        syncDirectory();
+    }
+
+    /**
+     * Waits until the changes to the entries of the directory (created, renamed and deleted files) are on disk.
+     *
+     * @throws IOException If the directory cannot be synced
+     */
+    private void syncDirectory() throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Directories cannot be opened on some platforms (e.g. Windows): the renames are left to the file system
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    //#endregion
+
+    //#region Merging
+
+    /**
+     * Callback receiving the merged entries.
+     */
+    @FunctionalInterface
+    private interface EntryConsumer {
+        /**
+         * Receives an entry.
+         *
+         * @param key   The key
+         * @param value The encoded value, or {@link #TOMBSTONE}
+         * @return false to stop the merge
+         * @throws IOException If an I/O error occurs while handling the entry
+         */
+        boolean accept(String key, byte[] value) throws IOException;
+    }
+
+    /**
+     * Returns cursors over the segments and, optionally, the memtable.
+     *
+     * @param withMemtable Whether to include the memtable
+     * @return The cursors, oldest first
+     * @throws IOException If a segment cannot be opened
+     */
+    private List<Cursor> sources(boolean withMemtable) throws IOException {
+        List<Cursor> sources = new ArrayList<>(segments.size() + 1);
+        try {
+            for (Segment segment : segments) sources.add(new SegmentCursor(segment));
+        } catch (IOException e) {
+            for (Cursor source : sources) source.close();
+            throw e;
+        }
+        if (withMemtable) sources.add(new MemtableCursor());
+        return sources;
+    }
+
+    /**
+     * Merges sorted sources into a single sequence of entries, in key order.
+     * <p>
+     * When several sources hold the same key, only the entry of the newest one is kept.
+     * </p>
+     *
+     * @param sources        The cursors to merge, oldest first; they are closed by this method
+     * @param dropTombstones Whether to leave the tombstones out
+     * @param consumer       The callback receiving the entries
+     * @throws IOException If an I/O error occurs while reading a source
+     */
+    private static void merge(List<Cursor> sources, boolean dropTombstones, EntryConsumer consumer) throws IOException {
+        // Equal keys come out newest first
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, sources.size()),
+                Comparator.comparing((Cursor cursor) -> cursor.key).thenComparing(cursor -> -cursor.rank));
+        try {
+            for (int rank = 0; rank < sources.size(); rank++) {
+                Cursor source = sources.get(rank);
+                source.rank = rank;
+                if (source.next()) queue.add(source);
+            }
+            while (!queue.isEmpty()) {
+                Cursor newest = queue.poll();
+                String key = newest.key;
+                byte[] value = newest.value;
+                if (newest.next()) queue.add(newest);
+                while (!queue.isEmpty() && queue.peek().key.equals(key)) {
+                    Cursor older = queue.poll();
+                    if (older.next()) queue.add(older);
+                }
+                if (dropTombstones && value == TOMBSTONE) continue;
+                if (!consumer.accept(key, value)) return;
+            }
+        } finally {
+            for (Cursor source : sources) source.close();
+        }
+    }
+
+    /**
+     * Sequential reader of sorted entries.
+     */
+    private abstract static class Cursor {
+        /**
+         * The key of the current entry.
+         */
+        String key;
+
+        /**
+         * The value of the current entry, or {@link #TOMBSTONE}.
+         */
+        byte[] value;
+
+        /**
+         * Age of the source in a merge: a higher rank is newer.
+         */
+        int rank;
+
+        /**
+         * Moves to the next entry.
+         *
+         * @return false if there are no more entries
+         * @throws IOException If an I/O error occurs while reading
+         */
+        abstract boolean next() throws IOException;
+
+        /**
+         * Releases the resources of the cursor.
+         *
+         * @throws IOException If an I/O error occurs while closing
+         */
+        void close() throws IOException {
+        }
+    }
+
+    /**
+     * Cursor over the memtable.
+     */
+    private class MemtableCursor extends Cursor {
+        /**
+         * Iterator over a snapshot of the entries of the memtable.
+         */
+        private final Iterator<Map.Entry<String, byte[]>> entries = new TreeMap<>(memtable).entrySet().iterator();
+
+        @Override
+        boolean next() {
+            if (!entries.hasNext()) return false;
+            Map.Entry<String, byte[]> entry = entries.next();
+            key = entry.getKey();
+            value = entry.getValue();
+            return true;
+        }
+    }
+
+    /**
+     * Cursor over all the entries of a segment file.
+     */
+    private static class SegmentCursor extends Cursor {
+        /**
+         * The stream of the data section of the segment.
+         */
+        private final DataInputStream in;
+
+        /**
+         * Number of entries left to read.
+         */
+        private int remaining;
+
+        /**
+         * Opens a cursor at the first entry of a segment.
+         *
+         * @param segment The segment
+         * @throws IOException If the segment cannot be opened
+         */
+        SegmentCursor(Segment segment) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.path), 64 * 1024));
+            this.remaining = segment.count;
+        }
+
+        @Override
+        boolean next() throws IOException {
+            if (remaining == 0) return false;
+            remaining--;
+            key = readKey(in);
+            value = readValue(in);
+            return true;
+        }
+
+        @Override
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    //#endregion
+
+    //#region Segments
+
+    /**
+     * An immutable segment file, with its sparse index.
+     */
+    private static class Segment {
+        /**
+         * The path of the file.
+         */
+        final Path path;
+
+        /**
+         * The indexed keys, in key order.
+         */
+        final String[] keys;
+
+        /**
+         * The offsets of the entries of the indexed keys.
+         */
+        final long[] offsets;
+
+        /**
+         * The Bloom filter of the keys.
+         */
+        final Bloom bloom;
+
+        /**
+         * The end of the data section, where the index starts.
+         */
+        final long dataEnd;
+
+        /**
+         * The number of entries.
+         */
+        final int count;
+
+        /**
+         * Creates a segment.
+         *
+         * @param path    The path of the file
+         * @param keys    The indexed keys
+         * @param offsets The offsets of the entries of the indexed keys
+         * @param bloom   The Bloom filter of the keys
+         * @param dataEnd The end of the data section
+         * @param count   The number of entries
+         */
+        Segment(Path path, String[] keys, long[] offsets, Bloom bloom, long dataEnd, int count) {
+            this.path = path;
+            this.keys = keys;
+            this.offsets = offsets;
+            this.bloom = bloom;
+            this.dataEnd = dataEnd;
+            this.count = count;
+        }
+
+        /**
+         * Opens a segment file, reading its sparse index and its Bloom filter.
+         *
+         * @param path The path of the file
+         * @return The segment
+         * @throws IOException If the file cannot be read or is not a valid segment
+         */
+        static Segment open(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < FOOTER_BYTES) throw new IOException("Invalid segment " + path);
+                ByteBuffer footer = read(channel, size - FOOTER_BYTES, FOOTER_BYTES);
+                long indexOffset = footer.getLong();
+                long bloomOffset = footer.getLong();
+                int indexSize = footer.getInt();
+                int count = footer.getInt();
+                if (footer.getInt() != SEGMENT_MAGIC) throw new IOException("Invalid segment " + path);
+                // The Bloom filter holds at least one word
+                if (indexOffset < 0 || bloomOffset < indexOffset || bloomOffset >= size - FOOTER_BYTES
+                        || (size - FOOTER_BYTES - bloomOffset) % Long.BYTES != 0) {
+                    throw new IOException("Invalid segment " + path);
+                }
+
+                ByteBuffer index = read(channel, indexOffset, (int) (bloomOffset - indexOffset));
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(index.array()));
+                String[] keys = new String[indexSize];
+                long[] offsets = new long[indexSize];
+                for (int i = 0; i < indexSize; i++) {
+                    keys[i] = readKey(in);
+                    offsets[i] = in.readLong();
+                }
+                long[] words = new long[(int) ((size - FOOTER_BYTES - bloomOffset) / Long.BYTES)];
+                read(channel, bloomOffset, words.length * Long.BYTES).asLongBuffer().get(words);
+                return new Segment(path, keys, offsets, new Bloom(words), indexOffset, count);
+            }
+        }
+
+        /**
+         * Looks a key up in the segment.
+         *
+         * @param key The key
+         * @return The encoded value, {@link #TOMBSTONE} if the key is deleted, or null if the key is not in the segment
+         * @throws IOException If the file cannot be read
+         */
+        byte[] get(String key) throws IOException {
+            if (!bloom.mightContain(key)) return null;
+
+            // Last indexed key not greater than the key
+            int block = Arrays.binarySearch(keys, key);
+            if (block < 0) block = -block - 2;
+            if (block < 0) return null;
+
+            long start = offsets[block];
+            long end = block + 1 < offsets.length ? offsets[block + 1] : dataEnd;
+            ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = read(channel, start, (int) (end - start));
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+            while (in.available() > 0) {
+                int comparison = readKey(in).compareTo(key);
+                if (comparison > 0) return null;
+                byte[] value = readValue(in);
+                if (comparison == 0) return value;
+            }
+            return null;
+        }
+
+        /**
+         * Reads a range of a file.
+         *
+         * @param channel  The channel of the file
+         * @param position The start of the range
+         * @param length   The length of the range
+         * @return A heap buffer holding the range, positioned at its start
+         * @throws IOException If the range cannot be read completely
+         */
+        private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException();
+            }
+            return buffer.flip();
+        }
+    }
+
+    /**
+     * Bloom filter of the keys of a segment.
+     * <p>
+     * The bits of a key are chosen by double hashing a 64-bit mix of {@link String#hashCode()},
+     * which is stable across runs.
+     * </p>
+     */
+    private static class Bloom {
+        /**
+         * The bits of the filter.
+         */
+        final long[] words;
+
+        /**
+         * Creates an empty filter sized for a number of keys.
+         *
+         * @param expected The number of keys that will be added
+         */
+        Bloom(int expected) {
+            this(new long[(int) Math.max(1, ((long) expected * BLOOM_BITS_PER_KEY + Long.SIZE - 1) / Long.SIZE)]);
+        }
+
+        /**
+         * Creates a filter on the bits read from a segment.
+         *
+         * @param words The bits of the filter
+         */
+        Bloom(long[] words) {
+            this.words = words;
+        }
+
+        /**
+         * Adds a key to the filter.
+         *
+         * @param key The key
+         */
+        void add(String key) {
+            long hash = mix(key.hashCode());
+            long bits = (long) words.length * Long.SIZE;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = Long.remainderUnsigned(hash + i * (hash >>> 32 | 1), bits);
+                words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        /**
+         * Tells whether a key may have been added to the filter.
+         *
+         * @param key The key
+         * @return false if the key was certainly not added
+         */
+        boolean mightContain(String key) {
+            long hash = mix(key.hashCode());
+            long bits = (long) words.length * Long.SIZE;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = Long.remainderUnsigned(hash + i * (hash >>> 32 | 1), bits);
+                if ((words[(int) (bit >>> 6)] & 1L << bit) == 0) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Spreads a 32-bit hash over 64 bits (finalizer of MurmurHash3).
+         *
+         * @param hash The hash
+         * @return The mixed hash
+         */
+        private static long mix(long hash) {
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+
+    /**
+     * Reads an encoded key.
+     *
+     * @param in The stream
+     * @return The key
+     * @throws IOException If the key cannot be read
+     */
+    private static String readKey(DataInputStream in) throws IOException {
+        byte[] key = new byte[in.readInt()];
+        in.readFully(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads an encoded value.
+     *
+     * @param in The stream
+     * @return The value, or {@link #TOMBSTONE}
+     * @throws IOException If the value cannot be read
+     */
+    private static byte[] readValue(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == TOMBSTONE_LENGTH) return TOMBSTONE;
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+
+    //#endregion
+}
@@ -0,0 +1,317 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import uni.insubria.theknife.model.Restaurant;
+
+import java.text.CollationKey;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Trigram index over the restaurant names, used by the search bar.
+ * <p>
+ * Names are normalised once when indexed (lower case, accents removed), and every
+ * trigram of a normalised name has a posting list of the ordinals of the restaurants
+ * containing it. A query is answered by walking the posting list of its rarest trigram
+ * and checking each candidate with a plain substring match. A restaurant keeps its
+ * ordinal when edited, and its old trigrams are removed from the posting lists.
+ * </p>
+ * <p>
+ * Results are ranked: names starting with the query first, then names with a word
+ * starting with the query, then all other matches, each group in alphabetical order.
+ * The alphabetical order of the names is computed once and kept until the next change,
+ * so ranking the results only sorts primitive keys. Queries shorter than a trigram walk
+ * the names in that order, and their results need no sorting at all.
+ * </p>
+ */
+public final class NameSearchIndex {
+
+    /**
+     * Length of the indexed n-grams.
+     */
+    private static final int GRAM = 3;
+
+    /**
+     * Combining marks left by the canonical decomposition of accented letters.
+     */
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Ordinals of the restaurants, shared with the other views of the catalogue.
+     */
+    private final RestaurantOrdinals ordinals;
+
+    /**
+     * Indexed restaurants by ordinal; removed restaurants leave a null slot.
+     */
+    private final List<Restaurant> restaurants = new ArrayList<>();
+
+    /**
+     * Normalised names by ordinal; removed restaurants leave a null slot.
+     */
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Posting lists by trigram, each sorted by ordinal and without duplicates.
+     */
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    /**
+     * Ordinals of the indexed restaurants in alphabetical order, or null if they must be recomputed.
+     */
+    private int[] byName = null;
+
+    /**
+     * Position of every ordinal in {@link #byName}.
+     */
+    private int[] namePositions = new int[0];
+
+    /**
+     * Growable sorted set of ordinals.
+     */
+    private static class Postings {
+        /**
+         * The ordinals, of which only the first {@link #size} are valid, in increasing order.
+         */
+        int[] ordinals = new int[4];
+
+        /**
+         * The number of ordinals in the list.
+         */
+        int size = 0;
+
+        /**
+         * Adds an ordinal to the list, if not already there.
+         *
+         * @param ordinal The ordinal to add
+         */
+        void add(int ordinal) {
+            int index = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (index >= 0) return;
+            index = -index - 1;
+            if (size == ordinals.length) ordinals = Arrays.copyOf(ordinals, size * 2);
+            System.arraycopy(ordinals, index, ordinals, index + 1, size - index);
+            ordinals[index] = ordinal;
+            size++;
+        }
+
+        /**
+         * Removes an ordinal from the list, if there.
+         *
+         * @param ordinal The ordinal to remove
+         */
+        void remove(int ordinal) {
+            int index = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (index < 0) return;
+            System.arraycopy(ordinals, index + 1, ordinals, index, size - index - 1);
+            size--;
+        }
+    }
+
+    /**
+     * Builds the index of a collection of restaurants.
+     *
+     * @param ordinals    The ordinals of the restaurants, shared with the other views
+     * @param restaurants The restaurants to index
+     */
+    public NameSearchIndex(RestaurantOrdinals ordinals, Collection<Restaurant> restaurants) {
+        this.ordinals = ordinals;
+        restaurants.forEach(this::add);
+    }
+
+    /**
+     * Adds a restaurant to the index, replacing any previous version with the same ID.
+     *
+     * @param restaurant The restaurant to add
+     */
+    public synchronized void add(Restaurant restaurant) {
+        int ordinal = ordinals.assign(restaurant.getId());
+        String name = normalize(restaurant.getName());
+        while (restaurants.size() <= ordinal) {
+            restaurants.add(null);
+            names.add(null);
+        }
+        unindex(ordinal);
+        restaurants.set(ordinal, restaurant);
+        names.set(ordinal, name);
+        for (int i = 0; i + GRAM <= name.length(); i++) {
+            postings.computeIfAbsent(name.substring(i, i + GRAM), k -> new Postings()).add(ordinal);
+        }
+        byName = null;
+    }
+
+    /**
+     * Re-indexes a restaurant whose name may have changed.
+     *
+     * @param restaurant The restaurant to update
+     */
+    public void update(Restaurant restaurant) {
+        add(restaurant);
+    }
+
+    /**
+     * Removes a restaurant from the index.
+     *
+     * @param restaurant The restaurant to remove
+     */
+    public synchronized void remove(Restaurant restaurant) {
+        int ordinal = ordinals.ordinalOf(restaurant.getId());
+        if (ordinal < 0 || ordinal >= restaurants.size()) return;
+        unindex(ordinal);
+        restaurants.set(ordinal, null);
+        names.set(ordinal, null);
+        byName = null;
+    }
+
+    /**
+     * Searches the restaurants whose name contains the query, ignoring case and accents.
+     *
+     * @param query The text entered by the user
+     * @return The matching restaurants, best matches first; all restaurants if the query is blank
+     */
+    public synchronized List<Restaurant> search(String query) {
+        String normalized = normalize(query).trim();
+        int[] order = byName();
+
+        if (normalized.length() < GRAM) {
+            // Walking the names in alphabetical order keeps every rank already sorted
+            List<Restaurant> starting = new ArrayList<>();
+            List<Restaurant> wordStarting = new ArrayList<>();
+            List<Restaurant> containing = new ArrayList<>();
+            for (int ordinal : order) {
+                switch (rank(ordinal, normalized)) {
+                    case 0 -> starting.add(restaurants.get(ordinal));
+                    case 1 -> wordStarting.add(restaurants.get(ordinal));
+                    case 2 -> containing.add(restaurants.get(ordinal));
+                    default -> {
+                    }
+                }
+            }
+            starting.addAll(wordStarting);
+            starting.addAll(containing);
+            return starting;
+        }
+
+        Postings rarest = rarestGram(normalized);
+        if (rarest == null) return List.of();
+
+        // Sort key of a match: its rank, then the position of its name in alphabetical order
+        long[] keys = new long[rarest.size];
+        int count = 0;
+        for (int i = 0; i < rarest.size; i++) {
+            int ordinal = rarest.ordinals[i];
+            int rank = rank(ordinal, normalized);
+            if (rank >= 0) keys[count++] = (long) rank << Integer.SIZE | namePositions[ordinal];
+        }
+        Arrays.sort(keys, 0, count);
+
+        List<Restaurant> ranked = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) ranked.add(restaurants.get(order[(int) keys[i]]));
+        return ranked;
+    }
+
+    /**
+     * Returns the ordinals of the indexed restaurants in alphabetical order, computing them if needed.
+     *
+     * @return The ordinals, sorted by name as by {@link RestaurantIndex.SortOrder#NAME}
+     */
+    private int[] byName() {
+        if (byName == null) {
+            Integer[] sorted = new Integer[restaurants.size()];
+            CollationKey[] keys = new CollationKey[restaurants.size()];
+            int count = 0;
+            for (int ordinal = 0; ordinal < restaurants.size(); ordinal++) {
+                if (restaurants.get(ordinal) == null) continue;
+                sorted[count++] = ordinal;
+                keys[ordinal] = RestaurantIndex.nameKey(restaurants.get(ordinal));
+            }
+            sorted = Arrays.copyOf(sorted, count);
+            Arrays.sort(sorted, Comparator.comparing(ordinal -> keys[ordinal]));
+
+            byName = new int[sorted.length];
+            namePositions = new int[restaurants.size()];
+            for (int position = 0; position < sorted.length; position++) {
+                byName[position] = sorted[position];
+                namePositions[sorted[position]] = position;
+            }
+        }
+        return byName;
+    }
+
+    /**
+     * Removes the trigrams of the current name of a restaurant from the posting lists.
+     *
+     * @param ordinal The ordinal of the restaurant
+     */
+    private void unindex(int ordinal) {
+        String name = names.get(ordinal);
+        if (name == null) return;
+        for (int i = 0; i + GRAM <= name.length(); i++) {
+            String gram = name.substring(i, i + GRAM);
+            Postings list = postings.get(gram);
+            if (list == null) continue;
+            list.remove(ordinal);
+            if (list.size == 0) postings.remove(gram);
+        }
+    }
+
+    /**
+     * Returns the posting list of the rarest trigram of the query.
+     *
+     * @param query The normalised query, at least one trigram long
+     * @return The shortest posting list, or null if a trigram is not indexed at all
+     */
+    private Postings rarestGram(String query) {
+        Postings rarest = null;
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            Postings candidate = postings.get(query.substring(i, i + GRAM));
+            if (candidate == null) return null;
+            if (rarest == null || candidate.size < rarest.size) rarest = candidate;
+        }
+        return rarest;
+    }
+
+    /**
+     * Ranks a restaurant name against a query.
+     *
+     * @param ordinal The ordinal of the restaurant
+     * @param query   The normalised query
+     * @return 0 if the name starts with the query, 1 if a word of the name does, 2 if the name
+     *         otherwise contains the query, -1 if it does not contain it
+     */
+    private int rank(int ordinal, String query) {
+        String name = names.get(ordinal);
+        int position = name.indexOf(query);
+        if (position < 0) return -1;
+        if (position == 0) return 0;
+        // A later occurrence may start a word even if the first one does not
+        for (; position >= 0; position = name.indexOf(query, position + 1)) {
+            if (!Character.isLetterOrDigit(name.charAt(position - 1))) return 1;
+        }
+        return 2;
+    }
+
+    /**
+     * Normalises a name for searching: lower case and without accents.
+     *
+     * @param text The text to normalise
+     * @return The normalised text, or an empty string if the text is null
+     */
+    public static String normalize(String text) {
+        if (text == null) return "";
+        return MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+}
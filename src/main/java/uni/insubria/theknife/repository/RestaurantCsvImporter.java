@@ -0,0 +1,341 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import uni.insubria.theknife.model.Restaurant;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parallel importer of the Michelin restaurant CSV.
+ * <p>
+ * The file is read as a stream of fixed-size blocks. Every block is cut after the last
+ * line break that is not inside a quoted field (descriptions may contain line breaks),
+ * and the resulting chunk of whole records is parsed on the fork-join pool while the
+ * following blocks are read. Records are mapped to {@link Restaurant} by a hand-written
+ * field mapper driven by the header.
+ * </p>
+ * <p>
+ * The attributes encoded in the dictionaries (location, price, cuisine, award) are only
+ * set in the final merge step, in file order, so that dictionary codes do not depend on
+ * the scheduling of the chunks.
+ * </p>
+ */
+public class RestaurantCsvImporter {
+    /**
+     * Default constructor for the RestaurantCsvImporter class.
+     * <p>
+     * This constructor is not meant to be used directly as this class only provides
+     * static methods. The class is not designed to be instantiated.
+     * </p>
+     */
+    public RestaurantCsvImporter() {
+        // Default constructor - not meant to be used
+    }
+
+    /**
+     * Number of characters read at a time, and approximate size of a chunk.
+     */
+    private static final int BLOCK_CHARS = 256 * 1024;
+
+    /**
+     * Byte order mark that may start the file.
+     */
+    private static final char BOM = '\uFEFF';
+
+    /**
+     * Positions of the known columns in the header, -1 for missing columns.
+     *
+     * @param name        The "Name" column
+     * @param address     The "Address" column
+     * @param location    The "Location" column
+     * @param price       The "Price" column
+     * @param cuisine     The "Cuisine" column
+     * @param longitude   The "Longitude" column
+     * @param latitude    The "Latitude" column
+     * @param phone       The "PhoneNumber" column
+     * @param michelinUrl The "Url" column
+     * @param websiteUrl  The "WebsiteUrl" column
+     * @param award       The "Award" column
+     * @param greenStar   The "GreenStar" column
+     * @param facilities  The "FacilitiesAndServices" column
+     * @param description The "Description" column
+     */
+    private record Columns(int name, int address, int location, int price, int cuisine, int longitude, int latitude,
+                           int phone, int michelinUrl, int websiteUrl, int award, int greenStar, int facilities,
+                           int description) {
+
+        /**
+         * Finds the known columns in a header.
+         *
+         * @param header The fields of the header record
+         * @return The positions of the columns
+         */
+        static Columns of(String[] header) {
+            List<String> names = new ArrayList<>(header.length);
+            for (String column : header) names.add(column.trim());
+            return new Columns(names.indexOf("Name"), names.indexOf("Address"), names.indexOf("Location"),
+                    names.indexOf("Price"), names.indexOf("Cuisine"), names.indexOf("Longitude"),
+                    names.indexOf("Latitude"), names.indexOf("PhoneNumber"), names.indexOf("Url"),
+                    names.indexOf("WebsiteUrl"), names.indexOf("Award"), names.indexOf("GreenStar"),
+                    names.indexOf("FacilitiesAndServices"), names.indexOf("Description"));
+        }
+    }
+
+    /**
+     * A parsed record: the restaurant without its dictionary attributes, and the raw fields.
+     *
+     * @param restaurant The restaurant
+     * @param fields     The fields of the record
+     */
+    private record Row(Restaurant restaurant, String[] fields) {
+    }
+
+    /**
+     * Imports the restaurants of a CSV file.
+     *
+     * @param path The path of the CSV file
+     * @return The restaurants, in file order
+     * @throws IOException if the file cannot be read
+     */
+    public static List<Restaurant> importFile(String path) throws IOException {
+        List<ForkJoinTask<List<Row>>> chunks = new ArrayList<>();
+        Columns columns;
+        try (Reader reader = Files.newBufferedReader(Path.of(path), StandardCharsets.UTF_8)) {
+            columns = split(reader, chunks);
+        }
+
+        // Merge step: dictionary attributes, in file order
+        List<Restaurant> restaurants = new ArrayList<>();
+        for (ForkJoinTask<List<Row>> chunk : chunks) {
+            for (Row row : chunk.join()) {
+                String[] fields = row.fields();
+                Restaurant restaurant = row.restaurant()
+                        .setLocation(text(fields, columns.location()))
+                        .setPrice(text(fields, columns.price()))
+                        .setCuisine(text(fields, columns.cuisine()))
+                        .setAward(text(fields, columns.award()));
+                restaurants.add(restaurant);
+            }
+        }
+        return restaurants;
+    }
+
+    /**
+     * Reads the file block by block and submits every chunk of whole records for parsing.
+     *
+     * @param reader The reader of the file
+     * @param chunks The list receiving the parsing tasks, in file order
+     * @return The columns found in the header
+     * @throws IOException if the file cannot be read
+     */
+    private static Columns split(Reader reader, List<ForkJoinTask<List<Row>>> chunks) throws IOException {
+        char[] block = new char[BLOCK_CHARS];
+        StringBuilder pending = new StringBuilder();
+        boolean inQuotes = false;
+        Columns columns = null;
+
+        int read;
+        while ((read = reader.read(block)) != -1) {
+            // Quotes toggle the state; an escaped quote toggles it twice
+            int boundary = -1;
+            for (int i = 0; i < read; i++) {
+                char c = block[i];
+                if (c == '"') {
+                    inQuotes = !inQuotes;
+                } else if (c == '\n' && !inQuotes) {
+                    boundary = i;
+                }
+            }
+            if (boundary < 0) {
+                pending.append(block, 0, read);
+                continue;
+            }
+            pending.append(block, 0, boundary + 1);
+            String chunk = pending.toString();
+            pending.setLength(0);
+            pending.append(block, boundary + 1, read - boundary - 1);
+
+            if (columns == null) {
+                int headerEnd = chunk.indexOf('\n');
+                columns = header(chunk.substring(0, headerEnd));
+                chunk = chunk.substring(headerEnd + 1);
+            }
+            chunks.add(submit(chunk, columns));
+        }
+
+        if (columns == null) {
+            // The whole file is shorter than a block, or has no line break at all
+            String text = pending.toString();
+            int headerEnd = text.indexOf('\n');
+            columns = header(headerEnd < 0 ? text : text.substring(0, headerEnd));
+            pending.setLength(0);
+            if (headerEnd >= 0) pending.append(text, headerEnd + 1, text.length());
+        }
+        if (!pending.isEmpty()) chunks.add(submit(pending.toString(), columns));
+        return columns;
+    }
+
+    /**
+     * Parses the header record.
+     *
+     * @param line The header line
+     * @return The columns found in the header
+     */
+    private static Columns header(String line) {
+        if (!line.isEmpty() && line.charAt(0) == BOM) line = line.substring(1);
+        List<String[]> records = parse(line);
+        return Columns.of(records.isEmpty() ? new String[0] : records.get(0));
+    }
+
+    /**
+     * Submits a chunk of whole records for parsing on the fork-join pool.
+     *
+     * @param chunk   The records
+     * @param columns The columns of the file
+     * @return The parsing task
+     */
+    private static ForkJoinTask<List<Row>> submit(String chunk, Columns columns) {
+        return ForkJoinPool.commonPool().submit(() -> {
+            List<String[]> records = parse(chunk);
+            List<Row> rows = new ArrayList<>(records.size());
+            for (String[] fields : records) rows.add(new Row(map(fields, columns), fields));
+            return rows;
+        });
+    }
+
+    /**
+     * Maps the fields of a record to a restaurant, except for the dictionary attributes.
+     *
+     * @param fields  The fields of the record
+     * @param columns The columns of the file
+     * @return The restaurant
+     */
+    private static Restaurant map(String[] fields, Columns columns) {
+        return new Restaurant()
+                .setName(text(fields, columns.name()))
+                .setAddress(text(fields, columns.address()))
+                .setLongitude(decimal(fields, columns.longitude()))
+                .setLatitude(decimal(fields, columns.latitude()))
+                .setPhone(text(fields, columns.phone()))
+                .setMichelinUrl(text(fields, columns.michelinUrl()))
+                .setWebsiteUrl(text(fields, columns.websiteUrl()))
+                .setGreenStar(integer(fields, columns.greenStar()))
+                .setFacilities(text(fields, columns.facilities()))
+                .setDescription(text(fields, columns.description()));
+    }
+
+    /**
+     * Parses a chunk of whole CSV records.
+     * <p>
+     * Fields may be quoted, with quotes escaped by doubling them; quoted fields may
+     * contain commas and line breaks. Records end with a line feed, optionally
+     * preceded by a carriage return. Blank lines are skipped.
+     * </p>
+     *
+     * @param chunk The records
+     * @return The fields of every record
+     */
+    static List<String[]> parse(String chunk) {
+        List<String[]> records = new ArrayList<>();
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        int length = chunk.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = chunk.charAt(i);
+            if (inQuotes) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < length && chunk.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    inQuotes = false;
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                endRecord(records, fields, field);
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        endRecord(records, fields, field);
+        return records;
+    }
+
+    /**
+     * Closes the current record, unless it is a blank line.
+     *
+     * @param records The parsed records
+     * @param fields  The fields of the current record
+     * @param field   The current field
+     */
+    private static void endRecord(List<String[]> records, List<String> fields, StringBuilder field) {
+        if (fields.isEmpty() && field.isEmpty()) return;
+        fields.add(field.toString());
+        records.add(fields.toArray(new String[0]));
+        fields.clear();
+        field.setLength(0);
+    }
+
+    /**
+     * Returns a text field.
+     *
+     * @param fields The fields of the record
+     * @param column The position of the column, or -1
+     * @return The value, empty if the field is empty, or null if the column is missing
+     */
+    private static String text(String[] fields, int column) {
+        return column < 0 || column >= fields.length ? null : fields[column];
+    }
+
+    /**
+     * Returns a decimal field.
+     *
+     * @param fields The fields of the record
+     * @param column The position of the column, or -1
+     * @return The value, or null if the field is missing, empty or not a number
+     */
+    private static Float decimal(String[] fields, int column) {
+        String value = text(fields, column);
+        try {
+            return value == null || value.isBlank() ? null : Float.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns an integer field.
+     *
+     * @param fields The fields of the record
+     * @param column The position of the column, or -1
+     * @return The value, or null if the field is missing, empty or not a number
+     */
+    private static Integer integer(String[] fields, int column) {
+        String value = text(fields, column);
+        try {
+            return value == null || value.isBlank() ? null : Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
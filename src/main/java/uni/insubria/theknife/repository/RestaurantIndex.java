@@ -0,0 +1,546 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import uni.insubria.theknife.model.AttributeDictionary;
+import uni.insubria.theknife.model.FilterOptions;
+import uni.insubria.theknife.model.RatingSummary;
+import uni.insubria.theknife.model.Restaurant;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Inverted index of the restaurant catalogue, used to answer filter queries.
+ * <p>
+ * Every indexed restaurant gets an ordinal, and for every value of location, cuisine,
+ * price, award and single facility the index keeps a posting list: the set of the
+ * ordinals of the restaurants having that value, as a {@link BitSet}. A query is answered
+ * by intersecting the posting lists of the selected values; only the star rating,
+ * which changes with every review, is checked on the remaining candidates.
+ * </p>
+ * <p>
+ * Values are keyed by their folded code in the {@link AttributeDictionary}, so lookups
+ * are case-insensitive. Facilities are only indexed the first time a query needs them,
+ * so that building the index does not load the long text of every restaurant.
+ * </p>
+ * <p>
+ * The index also keeps the permutations of the ordinals for every {@link SortOrder}, built
+ * the first time they are needed and dropped when the catalogue changes, so that a sorted
+ * result is produced by walking a permutation and keeping the matching restaurants.
+ * Names are compared through collation keys computed once, when a restaurant is indexed.
+ * </p>
+ */
+public final class RestaurantIndex {
+
+    /**
+     * Orders in which the index can return the restaurants.
+     */
+    public enum SortOrder {
+        /**
+         * Alphabetical order of the names, ignoring case.
+         */
+        NAME,
+
+        /**
+         * Highest average rating first, then by name.
+         */
+        RATING,
+
+        /**
+         * Most Michelin Green Stars first, then by name.
+         */
+        GREEN_STAR
+    }
+
+    /**
+     * Collator of the restaurant names: accents are significant, case is not.
+     */
+    private static final Collator COLLATOR = Collator.getInstance(Locale.ITALY);
+
+    static {
+        COLLATOR.setStrength(Collator.SECONDARY);
+    }
+
+    /**
+     * Returns the key of a restaurant in the order by name, shared by all the views of the
+     * catalogue so that they list restaurants with the same name order.
+     *
+     * @param restaurant The restaurant
+     * @return The collation key of its name; a missing name comes first
+     */
+    static CollationKey nameKey(Restaurant restaurant) {
+        return COLLATOR.getCollationKey(restaurant.getName() == null ? "" : restaurant.getName());
+    }
+
+    /**
+     * Indexed restaurants by ordinal; removed restaurants leave a null slot.
+     */
+    private final List<Restaurant> restaurants = new ArrayList<>();
+
+    /**
+     * Values each restaurant was indexed with, by ordinal.
+     */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Collation keys of the names, by ordinal.
+     */
+    private final List<CollationKey> nameKeys = new ArrayList<>();
+
+    /**
+     * Cached permutations of the live ordinals, by order.
+     */
+    private final Map<SortOrder, int[]> orders = new EnumMap<>(SortOrder.class);
+
+    /**
+     * The {@link RatingSummary#version()} the cached order by rating was built at.
+     */
+    private long ratingVersion = -1;
+
+    /**
+     * Number of changes made to the index.
+     */
+    private long version = 0;
+
+    /**
+     * Ordinals of the restaurants, shared with the other views of the catalogue.
+     */
+    private final RestaurantOrdinals ordinals;
+
+    /**
+     * Ordinals of the restaurants currently in the index.
+     */
+    private final BitSet live = new BitSet();
+
+    /**
+     * Posting lists by folded location code.
+     */
+    private final Map<Integer, BitSet> byLocation = new HashMap<>();
+
+    /**
+     * Posting lists by folded cuisine code.
+     */
+    private final Map<Integer, BitSet> byCuisine = new HashMap<>();
+
+    /**
+     * Posting lists by folded price code.
+     */
+    private final Map<Integer, BitSet> byPrice = new HashMap<>();
+
+    /**
+     * Posting lists by folded award code.
+     */
+    private final Map<Integer, BitSet> byAward = new HashMap<>();
+
+    /**
+     * Posting lists by facility code.
+     */
+    private final Map<Integer, BitSet> byFacility = new HashMap<>();
+
+    /**
+     * Whether the facilities of the restaurants have been indexed.
+     */
+    private boolean facilitiesIndexed = false;
+
+    /**
+     * The values a restaurant was indexed with, needed to remove it even if it has been modified since.
+     *
+     * @param location   The folded location code
+     * @param cuisine    The folded cuisine code
+     * @param price      The folded price code
+     * @param award      The folded award code
+     * @param facilities The facility codes, or null if not indexed yet
+     */
+    private record Entry(int location, int cuisine, int price, int award, int[] facilities) {
+    }
+
+    /**
+     * Builds the index of a collection of restaurants.
+     * <p>
+     * The index gives an ordinal to the restaurants that have none, but never releases
+     * one: the owner of the table does, once every view has removed the restaurant.
+     * </p>
+     *
+     * @param ordinals    The ordinals of the restaurants, shared with the other views
+     * @param restaurants The restaurants to index
+     */
+    public RestaurantIndex(RestaurantOrdinals ordinals, Collection<Restaurant> restaurants) {
+        this.ordinals = ordinals;
+        restaurants.forEach(this::add);
+    }
+
+    /**
+     * Adds a restaurant to the index.
+     *
+     * @param restaurant The restaurant to add
+     */
+    public synchronized void add(Restaurant restaurant) {
+        int ordinal = ordinals.assign(restaurant.getId());
+        if (live.get(ordinal)) {
+            update(restaurant);
+            return;
+        }
+        while (restaurants.size() <= ordinal) {
+            restaurants.add(null);
+            entries.add(null);
+            nameKeys.add(null);
+        }
+        restaurants.set(ordinal, restaurant);
+        live.set(ordinal);
+        post(ordinal, restaurant);
+    }
+
+    /**
+     * Re-indexes a restaurant whose attributes have changed.
+     *
+     * @param restaurant The restaurant to update
+     */
+    public synchronized void update(Restaurant restaurant) {
+        int ordinal = ordinals.ordinalOf(restaurant.getId());
+        if (ordinal < 0 || !live.get(ordinal)) {
+            add(restaurant);
+            return;
+        }
+        unpost(ordinal);
+        restaurants.set(ordinal, restaurant);
+        post(ordinal, restaurant);
+    }
+
+    /**
+     * Removes a restaurant from the index.
+     *
+     * @param restaurant The restaurant to remove
+     */
+    public synchronized void remove(Restaurant restaurant) {
+        int ordinal = ordinals.ordinalOf(restaurant.getId());
+        if (ordinal < 0 || !live.get(ordinal)) return;
+        unpost(ordinal);
+        restaurants.set(ordinal, null);
+        entries.set(ordinal, null);
+        nameKeys.set(ordinal, null);
+        live.clear(ordinal);
+        orders.clear();
+        version++;
+    }
+
+    /**
+     * Returns the number of changes made to the index, to tell when data derived from it is stale.
+     *
+     * @return A counter increasing with every added, updated or removed restaurant
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Returns the restaurants matching the given filters.
+     *
+     * @param filters The compiled filters
+     * @return The matching restaurants, in index order
+     */
+    public synchronized List<Restaurant> query(FilterOptions.Compiled filters) {
+        BitSet result = candidates(filters);
+        List<Restaurant> matches = new ArrayList<>(result.cardinality());
+        for (int ordinal = result.nextSetBit(0); ordinal >= 0; ordinal = result.nextSetBit(ordinal + 1)) {
+            Restaurant restaurant = restaurants.get(ordinal);
+            if (matchesStars(filters, restaurant)) matches.add(restaurant);
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the restaurants matching the given filters in a given order.
+     * <p>
+     * Nothing is sorted as long as the catalogue and, for {@link SortOrder#RATING},
+     * the ratings do not change.
+     * </p>
+     *
+     * @param order   The order of the result
+     * @param filters The compiled filters, or null for all the restaurants
+     * @return The matching restaurants, in the given order
+     */
+    public synchronized List<Restaurant> sorted(SortOrder order, FilterOptions.Compiled filters) {
+        BitSet result = filters == null ? live : candidates(filters);
+        List<Restaurant> matches = new ArrayList<>(result.cardinality());
+        for (int ordinal : permutation(order)) {
+            if (!result.get(ordinal)) continue;
+            Restaurant restaurant = restaurants.get(ordinal);
+            if (filters == null || matchesStars(filters, restaurant)) matches.add(restaurant);
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the restaurants without coordinates matching the given filters, ordered by name.
+     * <p>
+     * These are the restaurants left out of the spatial index; only they are collected,
+     * walking the cached order by name.
+     * </p>
+     *
+     * @param filters The compiled filters, or null for all the restaurants
+     * @return The matching restaurants without latitude or longitude, ordered by name
+     */
+    public synchronized List<Restaurant> withoutCoordinates(FilterOptions.Compiled filters) {
+        BitSet result = filters == null ? live : candidates(filters);
+        List<Restaurant> matches = new ArrayList<>();
+        for (int ordinal : permutation(SortOrder.NAME)) {
+            if (!result.get(ordinal)) continue;
+            Restaurant restaurant = restaurants.get(ordinal);
+            if (restaurant.getLatitude() != null && restaurant.getLongitude() != null) continue;
+            if (filters == null || matchesStars(filters, restaurant)) matches.add(restaurant);
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the restaurants in a given location.
+     *
+     * @param location The location, compared ignoring case
+     * @return The restaurants in the location, in index order
+     */
+    public synchronized List<Restaurant> withLocation(String location) {
+        int code = AttributeDictionary.LOCATIONS.lookupIgnoreCase(location);
+        BitSet posting = code == AttributeDictionary.NULL_CODE ? null : byLocation.get(code);
+        if (posting == null) return List.of();
+
+        List<Restaurant> result = new ArrayList<>(posting.cardinality());
+        for (int ordinal = posting.nextSetBit(0); ordinal >= 0; ordinal = posting.nextSetBit(ordinal + 1)) {
+            result.add(restaurants.get(ordinal));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ordinals of the restaurants matching the indexed filters.
+     *
+     * @param filters The compiled filters
+     * @return The candidates, still to be checked against the star rating
+     */
+    private BitSet candidates(FilterOptions.Compiled filters) {
+        BitSet result = (BitSet) live.clone();
+        intersect(result, byLocation, filters.location());
+        intersect(result, byCuisine, filters.cuisine());
+        intersect(result, byPrice, filters.price());
+        if (filters.delivery() || filters.booking()) {
+            // Indexing encodes the facilities, so the codes are read afterwards
+            indexFacilities();
+            if (filters.delivery()) result.and(union(byFacility, filters.deliveryCodes()));
+            if (filters.booking()) result.and(union(byFacility, filters.bookingCodes()));
+        }
+        return result;
+    }
+
+    /**
+     * Checks a candidate against the star rating filter.
+     *
+     * @param filters    The compiled filters
+     * @param restaurant The candidate
+     * @return true if the restaurant has the selected stars, or no stars are selected
+     */
+    private static boolean matchesStars(FilterOptions.Compiled filters, Restaurant restaurant) {
+        // Stars are not indexed, check them on the candidates
+        return filters.stars() == FilterOptions.ANY || filters.test(restaurant);
+    }
+
+    /**
+     * Returns the permutation of the live ordinals for an order, building it if needed.
+     *
+     * @param order The order
+     * @return The live ordinals in the given order
+     */
+    private int[] permutation(SortOrder order) {
+        if (order == SortOrder.RATING && ratingVersion != RatingSummary.version()) {
+            orders.remove(SortOrder.RATING);
+        }
+        int[] permutation = orders.get(order);
+        if (permutation == null) {
+            if (order == SortOrder.RATING) ratingVersion = RatingSummary.version();
+            permutation = live.stream().boxed().sorted(comparator(order)).mapToInt(Integer::intValue).toArray();
+            orders.put(order, permutation);
+        }
+        return permutation;
+    }
+
+    /**
+     * Builds the comparator of the ordinals for an order.
+     * <p>
+     * Ratings and green stars are copied before sorting, so that a review added meanwhile
+     * cannot change the order while it is being computed.
+     * </p>
+     *
+     * @param order The order
+     * @return The comparator of the live ordinals
+     */
+    private Comparator<Integer> comparator(SortOrder order) {
+        Comparator<Integer> byName = Comparator.comparing(ordinal -> nameKeys.get(ordinal));
+        return switch (order) {
+            case NAME -> byName;
+            case RATING -> {
+                double[] averages = new double[restaurants.size()];
+                for (int ordinal = live.nextSetBit(0); ordinal >= 0; ordinal = live.nextSetBit(ordinal + 1)) {
+                    averages[ordinal] = restaurants.get(ordinal).getRating().average();
+                }
+                yield Comparator.<Integer>comparingDouble(ordinal -> averages[ordinal]).reversed().thenComparing(byName);
+            }
+            case GREEN_STAR -> {
+                int[] greenStars = new int[restaurants.size()];
+                for (int ordinal = live.nextSetBit(0); ordinal >= 0; ordinal = live.nextSetBit(ordinal + 1)) {
+                    Integer greenStar = restaurants.get(ordinal).getGreenStar();
+                    greenStars[ordinal] = greenStar == null ? 0 : greenStar;
+                }
+                yield Comparator.<Integer>comparingInt(ordinal -> greenStars[ordinal]).reversed().thenComparing(byName);
+            }
+        };
+    }
+
+    /**
+     * Returns the number of restaurants in every location.
+     *
+     * @return The number of restaurants by location, values differing only in case counted together
+     */
+    public synchronized Map<String, Integer> countByLocation() {
+        return count(byLocation, AttributeDictionary.LOCATIONS);
+    }
+
+    /**
+     * Returns the number of restaurants for every cuisine.
+     *
+     * @return The number of restaurants by cuisine, values differing only in case counted together
+     */
+    public synchronized Map<String, Integer> countByCuisine() {
+        return count(byCuisine, AttributeDictionary.CUISINES);
+    }
+
+    /**
+     * Counts the restaurants in the posting lists of an attribute.
+     *
+     * @param postings   The posting lists by folded code
+     * @param dictionary The dictionary of the attribute
+     * @return The number of restaurants by value
+     */
+    private static Map<String, Integer> count(Map<Integer, BitSet> postings, AttributeDictionary dictionary) {
+        Map<String, Integer> counts = new HashMap<>();
+        postings.forEach((code, posting) -> {
+            int count = posting.cardinality();
+            if (code != AttributeDictionary.NULL_CODE && count > 0) counts.put(dictionary.decode(code), count);
+        });
+        return counts;
+    }
+
+    /**
+     * Adds a restaurant to the posting lists of its values.
+     *
+     * @param ordinal    The ordinal of the restaurant
+     * @param restaurant The restaurant
+     */
+    private void post(int ordinal, Restaurant restaurant) {
+        Entry entry = new Entry(
+                AttributeDictionary.LOCATIONS.fold(restaurant.getLocationCode()),
+                AttributeDictionary.CUISINES.fold(restaurant.getCuisineCode()),
+                AttributeDictionary.PRICES.fold(restaurant.getPriceCode()),
+                AttributeDictionary.AWARDS.fold(restaurant.getAwardCode()),
+                facilitiesIndexed ? restaurant.getFacilityCodes() : null);
+        entries.set(ordinal, entry);
+        nameKeys.set(ordinal, nameKey(restaurant));
+        orders.clear();
+        version++;
+
+        posting(byLocation, entry.location()).set(ordinal);
+        posting(byCuisine, entry.cuisine()).set(ordinal);
+        posting(byPrice, entry.price()).set(ordinal);
+        posting(byAward, entry.award()).set(ordinal);
+        if (entry.facilities() != null) {
+            for (int code : entry.facilities()) posting(byFacility, code).set(ordinal);
+        }
+    }
+
+    /**
+     * Removes a restaurant from the posting lists of the values it was indexed with.
+     *
+     * @param ordinal The ordinal of the restaurant
+     */
+    private void unpost(int ordinal) {
+        Entry entry = entries.get(ordinal);
+        if (entry == null) return;
+        posting(byLocation, entry.location()).clear(ordinal);
+        posting(byCuisine, entry.cuisine()).clear(ordinal);
+        posting(byPrice, entry.price()).clear(ordinal);
+        posting(byAward, entry.award()).clear(ordinal);
+        if (entry.facilities() != null) {
+            for (int code : entry.facilities()) posting(byFacility, code).clear(ordinal);
+        }
+    }
+
+    /**
+     * Indexes the facilities of all the restaurants, if not done yet.
+     */
+    private void indexFacilities() {
+        if (facilitiesIndexed) return;
+        facilitiesIndexed = true;
+        for (int ordinal = live.nextSetBit(0); ordinal >= 0; ordinal = live.nextSetBit(ordinal + 1)) {
+            Entry entry = entries.get(ordinal);
+            int[] facilities = restaurants.get(ordinal).getFacilityCodes();
+            entries.set(ordinal, new Entry(entry.location(), entry.cuisine(), entry.price(), entry.award(), facilities));
+            for (int code : facilities) posting(byFacility, code).set(ordinal);
+        }
+    }
+
+    /**
+     * Returns the posting list of a value, creating it if needed.
+     *
+     * @param postings The posting lists of an attribute
+     * @param code     The code of the value
+     * @return The posting list of the value
+     */
+    private static BitSet posting(Map<Integer, BitSet> postings, int code) {
+        return postings.computeIfAbsent(code, k -> new BitSet());
+    }
+
+    /**
+     * Restricts a result to the posting list of a value.
+     *
+     * @param result   The result to restrict
+     * @param postings The posting lists of an attribute
+     * @param code     The folded code of the selected value, or {@link FilterOptions#ANY}
+     */
+    private static void intersect(BitSet result, Map<Integer, BitSet> postings, int code) {
+        if (code == FilterOptions.ANY) return;
+        // An unknown filter value matches no restaurant, not the ones without a value
+        BitSet posting = code == AttributeDictionary.NULL_CODE ? null : postings.get(code);
+        if (posting == null) {
+            result.clear();
+        } else {
+            result.and(posting);
+        }
+    }
+
+    /**
+     * Computes the union of the posting lists of a set of values.
+     *
+     * @param postings The posting lists of an attribute
+     * @param codes    The codes of the values
+     * @return The ordinals of the restaurants having at least one of the values
+     */
+    private static BitSet union(Map<Integer, BitSet> postings, BitSet codes) {
+        BitSet union = new BitSet();
+        for (int code = codes.nextSetBit(0); code >= 0; code = codes.nextSetBit(code + 1)) {
+            BitSet posting = postings.get(code);
+            if (posting != null) union.or(posting);
+        }
+        return union;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mapping between restaurant IDs and dense integer ordinals.
+ * <p>
+ * Restaurant IDs are strings; indexes addressing restaurants by position in arrays or
+ * {@link BitSet}s need small integers instead. The table gives every ID an ordinal the
+ * first time it is seen, and keeps it for as long as the ID is in the table, also when
+ * the restaurant is edited.
+ * </p>
+ * <p>
+ * One table is shared by all the views of the catalogue, so that the same ordinal
+ * designates the same restaurant in each of them. Released ordinals are reused, the
+ * lowest first, so the arrays and bitsets of the views stay as large as the catalogue
+ * instead of growing with every removal. An ordinal must therefore only be released
+ * once every view has dropped the restaurant it designated.
+ * </p>
+ */
+public class RestaurantOrdinals {
+
+    /**
+     * Ordinals keyed by restaurant ID.
+     */
+    private final Map<String, Integer> byId = new HashMap<>();
+
+    /**
+     * Restaurant IDs by ordinal; released ordinals leave a null slot.
+     */
+    private final List<String> ids = new ArrayList<>();
+
+    /**
+     * Released ordinals, waiting to be given to a new ID.
+     */
+    private final BitSet released = new BitSet();
+
+    /**
+     * Returns the ordinal of a restaurant ID.
+     *
+     * @param id The restaurant ID
+     * @return The ordinal, or -1 if the ID is not in the table
+     */
+    public synchronized int ordinalOf(String id) {
+        Integer ordinal = byId.get(id);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * Tells whether a restaurant ID is in the table.
+     *
+     * @param id The restaurant ID
+     * @return true if the ID has an ordinal
+     */
+    public synchronized boolean contains(String id) {
+        return byId.containsKey(id);
+    }
+
+    /**
+     * Returns the ordinal of a restaurant ID, giving it one if it has none.
+     * <p>
+     * The new ordinal is the lowest released one, or the next after the last assigned if
+     * none has been released.
+     * </p>
+     *
+     * @param id The restaurant ID
+     * @return The ordinal
+     */
+    public synchronized int assign(String id) {
+        Integer ordinal = byId.get(id);
+        if (ordinal != null) return ordinal;
+        int assigned = released.nextSetBit(0);
+        if (assigned >= 0) {
+            released.clear(assigned);
+            ids.set(assigned, id);
+        } else {
+            assigned = ids.size();
+            ids.add(id);
+        }
+        byId.put(id, assigned);
+        return assigned;
+    }
+
+    /**
+     * Removes a restaurant ID from the table, making its ordinal available to the next new ID.
+     *
+     * @param id The restaurant ID
+     * @return The ordinal the ID had, or -1 if it was not in the table
+     */
+    public synchronized int release(String id) {
+        Integer ordinal = byId.remove(id);
+        if (ordinal == null) return -1;
+        ids.set(ordinal, null);
+        released.set(ordinal);
+        return ordinal;
+    }
+
+    /**
+     * Returns the restaurant ID of an ordinal.
+     *
+     * @param ordinal The ordinal
+     * @return The restaurant ID, or null if the ordinal has been released or never assigned
+     */
+    public synchronized String idOf(int ordinal) {
+        return ordinal >= 0 && ordinal < ids.size() ? ids.get(ordinal) : null;
+    }
+
+    /**
+     * Returns the number of ordinals in use or waiting to be reused.
+     *
+     * @return The size of an array able to hold a value for every ordinal
+     */
+    public synchronized int capacity() {
+        return ids.size();
+    }
+
+    /**
+     * Returns the number of restaurant IDs in the table.
+     *
+     * @return The number of IDs
+     */
+    public synchronized int size() {
+        return byId.size();
+    }
+}
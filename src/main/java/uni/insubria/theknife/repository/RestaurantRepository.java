@@ -9,16 +9,22 @@ package uni.insubria.theknife.repository;
 import java.io.*;
 import java.util.*;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.opencsv.bean.CsvToBean;
-import com.opencsv.bean.CsvToBeanBuilder;
+import com.fasterxml.jackson.databind.ObjectReader;
 
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 import uni.insubria.theknife.model.FilterOptions;
 import uni.insubria.theknife.model.Restaurant;
-import uni.insubria.theknife.service.SessionService;
+import uni.insubria.theknife.model.Review;
+import uni.insubria.theknife.service.CatalogService;
+import uni.insubria.theknife.util.ContentId;
 
 /**
  * Repository for managing restaurant data in the TheKnife application.
@@ -32,6 +38,7 @@ import uni.insubria.theknife.service.SessionService;
  * for restaurant-related operations in the application.
  * </p>
  */
+@Slf4j
 public class RestaurantRepository {
     /**
      * Default constructor for the RestaurantRepository class.
@@ -54,79 +61,291 @@ public class RestaurantRepository {
     private static final String RESTAURANTS_CSV = "data/michelin_my_maps.csv";
 
     /**
-     * Path to the JSON file used for storing and retrieving restaurant data.
+     * Path to the JSON file used to import and export restaurant data.
      */
     private static final String RESTAURANTS_JSON = "data/restaurants.json";
 
+    /**
+     * Path to the binary snapshot used for storing and retrieving restaurant data.
+     */
+    private static final String RESTAURANTS_BIN = "data/restaurants.bin";
+
+    /**
+     * Path to the JSON file of the changes since the snapshot, used by the JSON store.
+     */
+    private static final String CHANGES_JSON = "data/restaurant-changes.json";
+
+    /**
+     * Number of changes after which they are compacted into a new snapshot.
+     */
+    private static final int COMPACTION_THRESHOLD = 200;
+
+    /**
+     * Jackson ObjectMapper instance used to encode the changes, leaving out empty values.
+     */
+    private static final ObjectMapper changesMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+
+    /**
+     * The store of the changes made to the catalogue since the snapshot, keyed by restaurant ID,
+     * or null if not opened yet.
+     */
+    private static Store<String, Change> changes = null;
+
+    /**
+     * Number of changes written to the store since the snapshot.
+     */
+    private static int pendingChanges = 0;
+
+    /**
+     * A change made to the catalogue since the snapshot: the new version of a restaurant, or its deletion.
+     */
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Change {
+        /**
+         * Whether the restaurant has been deleted.
+         */
+        private boolean deleted;
+
+        /**
+         * The new version of the restaurant, or null if it has been deleted.
+         */
+        private Restaurant restaurant;
+    }
+
     /**
      * Jackson ObjectMapper instance used for JSON serialization and deserialization.
      */
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
+    /**
+     * Shared Jackson ObjectReader binding the JSON export directly to a map of Restaurant objects.
+     */
+    private static final ObjectReader restaurantsReader = objectMapper.readerFor(new TypeReference<Map<String, Restaurant>>() {
+    });
+
 
 
     /**
-     * Saves the provided map of restaurants to a JSON file.
+     * Saves the provided map of restaurants to the binary snapshot.
      *
-     * @param restaurants a map containing restaurant names as keys and corresponding Restaurant object values
+     * @param restaurants a map containing restaurant IDs as keys and corresponding Restaurant object values
      * @throws IOException if an I/O error occurs during file writing
      */
     public static void saveRestaurants(Map<String, Restaurant> restaurants) throws IOException {
-        objectMapper.writeValue(new File(RESTAURANTS_JSON), restaurants);
+        RestaurantSnapshot.write(RESTAURANTS_BIN, restaurants);
+    }
 
+    /**
+     * Exports the provided map of restaurants to the JSON file.
+     *
+     * @param restaurants a map containing restaurant IDs as keys and corresponding Restaurant object values
+     * @throws IOException if an I/O error occurs during file writing
+     */
+    public static void exportRestaurantsJSON(Map<String, Restaurant> restaurants) throws IOException {
+        SnapshotWriter.write(RESTAURANTS_JSON, out -> objectMapper.writeValue(out, restaurants));
     }
 
     /**
      * Loads a list of restaurants from a CSV file.
+     * <p>
+     * The file is parsed in parallel by the {@link RestaurantCsvImporter}.
+     * </p>
      *
      * @return A list of Restaurant objects parsed from the CSV file.
      */
     static public List<Restaurant> loadRestaurantsCSV() {
-        try (InputStream is = new FileInputStream(RESTAURANTS_CSV)) {
-            Reader reader = new StringReader(new String(Objects.requireNonNull(is).readAllBytes()));
-            CsvToBean<Restaurant> cb = new CsvToBeanBuilder<Restaurant>(reader)
-                    .withType(Restaurant.class)
-                    .build();
-            return new ArrayList<>(cb.parse());
+        try {
+            return RestaurantCsvImporter.importFile(RESTAURANTS_CSV);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
     /**
-     * Loads the restaurants from the .json file
+     * Loads the restaurants from the binary snapshot.
+     * <p>
+     * If the snapshot doesn't exist yet, the restaurants are imported from the JSON file
+     * or, failing that, from the CSV file, and the snapshot is created. The changes stored
+     * since the last snapshot are then applied on top of it.
+     * </p>
      *
-     * @return A list of Restaurant objects representing the restaurant data loaded from the JSON file
+     * @return A map of Restaurant objects representing the restaurant data, keyed by ID
      */
     public static Map<String, Restaurant> loadRestaurants() {
         try {
-            File file = new File(RESTAURANTS_JSON);
-            if (!file.exists()) {
-                Map<String, Restaurant> restaurants = loadRestaurantsCSV().stream().map(restaurant -> {
-                    String id = String.valueOf(Objects.hash(restaurant.getName(), restaurant.getLatitude(), restaurant.getLongitude()));
-                    return restaurant
-                            .setId(id)
-                            .setReviews(ReviewsRepository.reviewsByRestaurant(restaurant));
-
-                }).collect(Collectors.toMap(Restaurant::getId, Function.identity()));
+            Map<String, Restaurant> restaurants;
+            if (SnapshotWriter.exists(RESTAURANTS_BIN)) {
+                restaurants = RestaurantSnapshot.read(RESTAURANTS_BIN);
+                pendingChanges = applyChanges(restaurants);
+            } else {
+                restaurants = SnapshotWriter.exists(RESTAURANTS_JSON) ? loadRestaurantsJSON() : importRestaurantsCSV();
                 saveRestaurants(restaurants);
-                return restaurants;
+                changes().clear();
+                pendingChanges = 0;
             }
-            Map<String, Restaurant> restaurants = objectMapper.readValue(new FileInputStream(file), new TypeReference<>() {
-            });
-            restaurants.keySet().forEach(key -> {
-                Restaurant restaurant = objectMapper.convertValue(restaurants.get(key), Restaurant.class);
-                restaurant.setReviews(ReviewsRepository.reviewsByRestaurant(restaurant));
-                restaurants.put(key, restaurant);
-            });
+            restaurants.values().forEach(restaurant -> restaurant
+                    .setReviews(ReviewsRepository.reviewsByRestaurant(restaurant))
+                    .setRating(ReviewsRepository.ratingOf(restaurant)));
             return restaurants;
         } catch (IOException e) {
-            throw new RuntimeException("Errore durante il caricamento delle recensioni", e);
+            throw new RuntimeException("Errore durante il caricamento dei ristoranti", e);
+        }
+    }
+
+    /**
+     * Imports the restaurants from the CSV file, assigning each one its ID.
+     *
+     * @return A map of Restaurant objects keyed by ID
+     */
+    private static Map<String, Restaurant> importRestaurantsCSV() {
+        Set<String> referenced = referencedRestaurantIds();
+        Map<String, Restaurant> restaurants = new LinkedHashMap<>();
+        for (Restaurant restaurant : loadRestaurantsCSV()) {
+            // Restaurants already referenced by reviews or users keep their old ID
+            String legacyId = legacyId(restaurant);
+            String id = referenced.contains(legacyId) && !restaurants.containsKey(legacyId)
+                    ? legacyId
+                    : assignId(restaurant, restaurants::get);
+            if (id == null) {
+                log.warn("Duplicate restaurant skipped during the import: {}", restaurant.getName());
+                continue;
+            }
+            restaurants.put(id, restaurant.setId(id));
+        }
+        return restaurants;
+    }
+
+    /**
+     * Collects the restaurant IDs referenced by the stored reviews and users.
+     *
+     * @return The referenced IDs
+     */
+    private static Set<String> referencedRestaurantIds() {
+        Set<String> referenced = new HashSet<>();
+        for (Review review : ReviewsRepository.loadReviews().values()) {
+            if (review.getRestaurant() != null) referenced.add(review.getRestaurant().getId());
+        }
+        try {
+            referenced.addAll(UserRepository.getReferencedRestaurantIds());
+        } catch (IOException e) {
+            log.warn("Cannot read the restaurants referenced by the users", e);
         }
+        return referenced;
+    }
+
+    /**
+     * Imports the restaurants from the JSON file.
+     *
+     * @return A map of Restaurant objects keyed by ID
+     * @throws IOException if the JSON file cannot be read
+     */
+    private static Map<String, Restaurant> loadRestaurantsJSON() throws IOException {
+        return SnapshotWriter.read(RESTAURANTS_JSON, restaurantsReader::readValue);
     }
 
 
 
+    /**
+     * Returns the store of the changes since the snapshot, opening it if needed.
+     * <p>
+     * The first time the store is opened, the records of the former {@link RestaurantsLog}
+     * are imported into it.
+     * </p>
+     *
+     * @return The store
+     * @throws IOException If the store cannot be opened
+     */
+    private static synchronized Store<String, Change> changes() throws IOException {
+        if (changes == null) {
+            changes = Stores.open("restaurant-changes", CHANGES_JSON, changesMapper, Change.class, RestaurantsLog::replay);
+        }
+        return changes;
+    }
+
+    /**
+     * Applies the stored changes to the restaurants read from the snapshot.
+     *
+     * @param restaurants The restaurants, keyed by ID, updated in place
+     * @return The number of changes applied
+     * @throws IOException If the store cannot be read
+     */
+    private static int applyChanges(Map<String, Restaurant> restaurants) throws IOException {
+        int[] count = {0};
+        changes().forEach((id, change) -> {
+            if (change.isDeleted() || change.getRestaurant() == null) restaurants.remove(id);
+            else restaurants.put(id, change.getRestaurant());
+            count[0]++;
+        });
+        return count[0];
+    }
+
+    /**
+     * Stores a change of the catalogue and, once {@link #COMPACTION_THRESHOLD} changes have
+     * been stored, compacts them into a new snapshot.
+     *
+     * @param restaurant The restaurant affected by the change
+     * @param deleted    Whether the restaurant has been deleted
+     * @throws IOException If an I/O error occurs while storing the change
+     */
+    private static void recordChange(Restaurant restaurant, boolean deleted) throws IOException {
+        changes().put(restaurant.getId(), new Change(deleted, deleted ? null : simplify(restaurant)));
+        if (++pendingChanges >= COMPACTION_THRESHOLD) {
+            try {
+                compact();
+            } catch (IOException e) {
+                // The change is already durable in the store, compaction will be retried on the next write
+                log.error("Error compacting the restaurants snapshot", e);
+            }
+        }
+    }
+
+    /**
+     * Writes the catalogue to a new snapshot and empties the store of the changes.
+     * <p>
+     * The change that triggers the compaction is not yet in the catalogue, so the stored
+     * changes are applied on top of it before writing.
+     * </p>
+     *
+     * @throws IOException If an I/O error occurs while writing the snapshot or clearing the changes
+     */
+    public static synchronized void compact() throws IOException {
+        Map<String, Restaurant> restaurants = new LinkedHashMap<>();
+        for (Restaurant restaurant : CatalogService.getRestaurants()) restaurants.put(restaurant.getId(), restaurant);
+        applyChanges(restaurants);
+        saveRestaurants(restaurants);
+        changes().clear();
+        pendingChanges = 0;
+    }
+
+    /**
+     * Creates a copy of a restaurant that only keeps the attributes stored in the snapshot,
+     * without its reviews and owner.
+     *
+     * @param restaurant The restaurant to simplify
+     * @return The simplified copy of the restaurant
+     */
+    private static Restaurant simplify(Restaurant restaurant) {
+        return new Restaurant()
+                .setId(restaurant.getId())
+                .setName(restaurant.getName())
+                .setAddress(restaurant.getAddress())
+                .setLocation(restaurant.getLocation())
+                .setPrice(restaurant.getPrice())
+                .setCuisine(restaurant.getCuisine())
+                .setLongitude(restaurant.getLongitude())
+                .setLatitude(restaurant.getLatitude())
+                .setPhone(restaurant.getPhone())
+                .setMichelinUrl(restaurant.getMichelinUrl())
+                .setWebsiteUrl(restaurant.getWebsiteUrl())
+                .setAward(restaurant.getAward())
+                .setGreenStar(restaurant.getGreenStar())
+                .setFacilities(restaurant.getFacilities())
+                .setDescription(restaurant.getDescription());
+    }
+
     //#region Restaurant CRUD
 
     //TODO TASK #11 --> non funziona + non bindata a niente
@@ -139,16 +358,15 @@ public class RestaurantRepository {
      * - SERVICE_ERROR if an error occurs during saving the repository
      * - NONE if the restaurant is successfully added
      */
-    public static ERROR_CODE addRestaurant(Restaurant restaurant) {
-        Map<String, Restaurant> restaurants = SessionService.getRestaurants().stream().collect(Collectors.toMap(Restaurant::getId,r -> r));
-        String id = generateUniqueId(restaurant);
-        if (restaurants.containsKey(id)) {
+    public static synchronized ERROR_CODE addRestaurant(Restaurant restaurant) {
+        String id = assignId(restaurant, CatalogService::get);
+        if (id == null) {
             return ERROR_CODE.DUPLICATED;
         }
-        restaurants.put(id, restaurant.setId(id));
+        restaurant.setId(id);
         try {
-            saveRestaurants(restaurants);
-            SessionService.getRestaurants().add(restaurant);
+            recordChange(restaurant, false);
+            CatalogService.added(restaurant);
         } catch (IOException e) {
             return ERROR_CODE.SERVICE_ERROR;
         }
@@ -161,13 +379,11 @@ public class RestaurantRepository {
      * @param restaurant The Restaurant object to edit.
      * @return ERROR_CODE.NONE if the restaurant was successfully edited, ERROR_CODE.SERVICE_ERROR if an error occurred.
      */
-    public static ERROR_CODE editRestaurant(Restaurant restaurant) {
-        Map<String, Restaurant> restaurants = SessionService.getRestaurants().stream().collect(Collectors.toMap(Restaurant::getId,r -> r));
-        if (restaurants.containsKey(restaurant.getId())) {
-            restaurants.put(restaurant.getId(), restaurant);
+    public static synchronized ERROR_CODE editRestaurant(Restaurant restaurant) {
+        if (CatalogService.get(restaurant.getId()) != null) {
             try {
-                saveRestaurants(restaurants);
-                SessionService.getRestaurants().add(restaurant);
+                recordChange(restaurant, false);
+                CatalogService.updated(restaurant);
             } catch (IOException e) {
                 return ERROR_CODE.SERVICE_ERROR;
             }
@@ -185,12 +401,12 @@ public class RestaurantRepository {
      * - SERVICE_ERROR if an error occurred during saving the changes
      * - NONE if the operation was successful
      */
-    public static ERROR_CODE deleteRestaurant(Restaurant restaurant) {
-        Map<String, Restaurant> restaurants = SessionService.getRestaurants().stream().collect(Collectors.toMap(Restaurant::getId,r -> r));
-        if (restaurants.remove(restaurant.getId()) != null) {
+    public static synchronized ERROR_CODE deleteRestaurant(Restaurant restaurant) {
+        if (CatalogService.get(restaurant.getId()) != null) {
             try {
-                saveRestaurants(restaurants);
-                SessionService.getRestaurants().remove(restaurant);
+                recordChange(restaurant, true);
+                CatalogService.removed(restaurant);
+                UserRepository.removeRestaurantReferences(restaurant.getId());
             } catch (IOException e) {
                 return ERROR_CODE.SERVICE_ERROR;
             }
@@ -200,29 +416,28 @@ public class RestaurantRepository {
     }
 
     /**
-     * Filters a list of restaurants based on a search query that matches
-     * part of the restaurant's name (case-insensitive).
+     * Searches the restaurants whose name contains the search query (case- and accent-insensitive)
+     * and that match the given filters.
+     * <p>
+     * The filters are passed explicitly, so that the search can run outside of the JavaFX thread.
+     * </p>
      *
-     * @param restaurants  The list of Restaurant objects to search through
      * @param searchQuery  The text input entered by the user
-     * @return A list of Restaurant objects whose names match the search query
+     * @param filters      The compiled filters, or null to keep all the matches
+     * @return A list of Restaurant objects whose names match the search query, best matches first
      */
-    public static List<Restaurant> searchRestaurants(List<Restaurant> restaurants, String searchQuery) {
-        // Return an empty list if the input list is null or empty
-        if (restaurants == null || restaurants.isEmpty()) {
-            return List.of();
+    public static List<Restaurant> searchRestaurants(String searchQuery, FilterOptions.Compiled filters) {
+        List<Restaurant> hits = CatalogService.getNameSearchIndex().search(searchQuery);
+        if (filters == null) {
+            return hits;
         }
 
-        FilterOptions filters = SessionService.getFilters();
-
-        // Lowercase query for case-insensitive search
-        String queryLower = (searchQuery != null) ? searchQuery.toLowerCase().trim() : "";
-
-        // Return filtered list by query + only if matches filters
-        return restaurants.stream()
-            .filter(r -> queryLower.isEmpty() || r.getName().toLowerCase().contains(queryLower))
-            .filter(r -> filters == null || filters.matches(r))
-            .collect(Collectors.toList());
+        // Keep the ranking, only drop the hits not matching the filters
+        List<Restaurant> results = new ArrayList<>(hits.size());
+        for (Restaurant r : hits) {
+            if (filters.test(r)) results.add(r);
+        }
+        return results;
     }
 
 
@@ -246,7 +461,53 @@ public class RestaurantRepository {
         NONE
     }
 
+    /**
+     * Generates the ID of a restaurant from its name and coordinates.
+     * <p>
+     * The ID is a 64-bit content hash (see {@link ContentId}), so the same restaurant gets
+     * the same ID on every import. Callers storing the restaurant must use {@link #assignId}
+     * instead, which also handles the IDs already taken.
+     * </p>
+     *
+     * @param restaurant The restaurant
+     * @return The ID derived from the restaurant
+     */
     public static String generateUniqueId(Restaurant restaurant){
+        return ContentId.of(restaurant.getName(), restaurant.getLatitude(), restaurant.getLongitude());
+    }
+
+    /**
+     * Chooses a free ID for a restaurant among the candidates derived from its content.
+     * <p>
+     * A candidate already taken by another restaurant with the same name and coordinates
+     * means the restaurant is a duplicate; one taken by a different restaurant is a hash
+     * collision, and the next candidate is tried.
+     * </p>
+     *
+     * @param restaurant The restaurant
+     * @param taken      The lookup of the restaurants already stored, returning null for a free ID
+     * @return The ID, or null if the restaurant is a duplicate
+     */
+    static String assignId(Restaurant restaurant, Function<String, Restaurant> taken) {
+        for (int attempt = 0; ; attempt++) {
+            String id = ContentId.candidate(attempt, restaurant.getName(), restaurant.getLatitude(), restaurant.getLongitude());
+            Restaurant other = taken.apply(id);
+            if (other == null) return id;
+            if (Objects.equals(other.getName(), restaurant.getName())
+                    && Objects.equals(other.getLatitude(), restaurant.getLatitude())
+                    && Objects.equals(other.getLongitude(), restaurant.getLongitude())) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the ID a restaurant had with the former 32-bit scheme.
+     *
+     * @param restaurant The restaurant
+     * @return The former ID
+     */
+    private static String legacyId(Restaurant restaurant) {
         return String.valueOf(Objects.hash(restaurant.getName(), restaurant.getLatitude(), restaurant.getLongitude()));
     }
 }
@@ -0,0 +1,381 @@
+/* 
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import uni.insubria.theknife.model.Restaurant;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Compact binary, column-oriented snapshot of the restaurant catalogue.
+ * <p>
+ * The file is laid out as follows (all numbers big-endian):
+ * </p>
+ * <ol>
+ *   <li>header: magic number, format version, number of restaurants</li>
+ *   <li>string dictionary shared by the low-cardinality attributes (location, cuisine, price, award)</li>
+ *   <li>one {@code int} column of dictionary codes per low-cardinality attribute</li>
+ *   <li>{@code float} columns for latitude and longitude, an {@code int} column for green stars</li>
+ *   <li>for every free-text attribute, an offset column and a length column into the text area</li>
+ *   <li>the text area: the UTF-8 bytes of all free-text values</li>
+ * </ol>
+ * <p>
+ * The snapshot is memory-mapped when loaded, so that no intermediate copy of the file
+ * is made; JSON and CSV are only used to import and export the catalogue. The mapping
+ * lives as long as the restaurants read from it, so every snapshot is written to a new
+ * file (see {@link SnapshotWriter#writeVersion}) rather than over the mapped one.
+ * </p>
+ */
+public class RestaurantSnapshot {
+    /**
+     * Default constructor for the RestaurantSnapshot class.
+     * <p>
+     * This constructor is not meant to be used directly as this class only provides
+     * static methods. The class is not designed to be instantiated.
+     * </p>
+     */
+    public RestaurantSnapshot() {
+        // Default constructor - not meant to be used
+    }
+
+    /**
+     * Magic number identifying a restaurant snapshot ("TKRS").
+     */
+    private static final int MAGIC = 0x544B5253;
+
+    /**
+     * Version of the binary format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Code used in the dictionary columns for a null value.
+     */
+    private static final int NULL_CODE = -1;
+
+    /**
+     * Low-cardinality attributes, stored as codes into the shared string dictionary.
+     */
+    private static final List<Column> DICTIONARY_COLUMNS = List.of(
+            new Column(Restaurant::getLocation, Restaurant::setLocation),
+            new Column(Restaurant::getCuisine, Restaurant::setCuisine),
+            new Column(Restaurant::getPrice, Restaurant::setPrice),
+            new Column(Restaurant::getAward, Restaurant::setAward)
+    );
+
+    /**
+     * Free-text attributes, stored as offset/length pairs into the text area.
+     * The first {@link #EAGER_TEXT_COLUMNS} are decoded on load, the others
+     * (see {@link Restaurant.Details}) only when first accessed.
+     */
+    private static final List<Column> TEXT_COLUMNS = List.of(
+            new Column(Restaurant::getId, Restaurant::setId),
+            new Column(Restaurant::getName, Restaurant::setName),
+            new Column(Restaurant::getAddress, Restaurant::setAddress),
+            new Column(Restaurant::getPhone, Restaurant::setPhone),
+            new Column(Restaurant::getMichelinUrl, Restaurant::setMichelinUrl),
+            new Column(Restaurant::getWebsiteUrl, Restaurant::setWebsiteUrl),
+            new Column(Restaurant::getFacilities, Restaurant::setFacilities),
+            new Column(Restaurant::getDescription, Restaurant::setDescription)
+    );
+
+    /**
+     * Number of free-text columns decoded when the snapshot is loaded.
+     */
+    private static final int EAGER_TEXT_COLUMNS = 4;
+
+    /**
+     * Index of the facilities in {@link #TEXT_COLUMNS}.
+     */
+    private static final int FACILITIES_COLUMN = EAGER_TEXT_COLUMNS + 2;
+
+    /**
+     * Number of recently opened restaurant details kept decoded in memory.
+     */
+    private static final int DETAILS_CACHE_SIZE = 32;
+
+    /**
+     * A string attribute of the restaurant together with its accessors.
+     *
+     * @param getter The getter of the attribute
+     * @param setter The setter of the attribute
+     */
+    private record Column(Function<Restaurant, String> getter, BiConsumer<Restaurant, String> setter) {
+    }
+
+    /**
+     * Writes the given restaurants as a binary snapshot.
+     *
+     * @param path        The path of the snapshot file
+     * @param restaurants A map containing restaurant IDs as keys and corresponding Restaurant objects as values
+     * @throws IOException If an I/O error occurs during file writing
+     */
+    public static void write(String path, Map<String, Restaurant> restaurants) throws IOException {
+        List<Restaurant> rows = new ArrayList<>(restaurants.values());
+        int count = rows.size();
+
+        // Dictionary of the low-cardinality values, in order of first appearance
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int[][] codes = new int[DICTIONARY_COLUMNS.size()][count];
+        for (int c = 0; c < DICTIONARY_COLUMNS.size(); c++) {
+            for (int i = 0; i < count; i++) {
+                String value = DICTIONARY_COLUMNS.get(c).getter().apply(rows.get(i));
+                codes[c][i] = value == null ? NULL_CODE : dictionary.computeIfAbsent(value, k -> dictionary.size());
+            }
+        }
+
+        // Text area with offsets/lengths of every free-text value
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        int[][] offsets = new int[TEXT_COLUMNS.size()][count];
+        int[][] lengths = new int[TEXT_COLUMNS.size()][count];
+        for (int c = 0; c < TEXT_COLUMNS.size(); c++) {
+            for (int i = 0; i < count; i++) {
+                String value = TEXT_COLUMNS.get(c).getter().apply(rows.get(i));
+                offsets[c][i] = text.size();
+                if (value == null) {
+                    lengths[c][i] = NULL_CODE;
+                } else {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    lengths[c][i] = bytes.length;
+                    text.write(bytes);
+                }
+            }
+        }
+
+        SnapshotWriter.writeVersion(path, os -> {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+
+            out.writeInt(dictionary.size());
+            for (String value : dictionary.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+
+            for (int[] column : codes) {
+                for (int code : column) out.writeInt(code);
+            }
+            for (Restaurant restaurant : rows) out.writeFloat(restaurant.getLatitude() != null ? restaurant.getLatitude() : Float.NaN);
+            for (Restaurant restaurant : rows) out.writeFloat(restaurant.getLongitude() != null ? restaurant.getLongitude() : Float.NaN);
+            for (Restaurant restaurant : rows) out.writeInt(restaurant.getGreenStar() != null ? restaurant.getGreenStar() : NULL_CODE);
+
+            for (int c = 0; c < TEXT_COLUMNS.size(); c++) {
+                for (int offset : offsets[c]) out.writeInt(offset);
+                for (int length : lengths[c]) out.writeInt(length);
+            }
+
+            out.writeInt(text.size());
+            text.writeTo(out);
+            out.flush();
+        });
+    }
+
+    /**
+     * Loads the restaurants from the newest valid generation of a binary snapshot.
+     *
+     * @param path The path of the snapshot file
+     * @return A map containing restaurant IDs as keys and corresponding Restaurant objects as values
+     * @throws IOException If the snapshot does not exist or is invalid
+     */
+    public static Map<String, Restaurant> read(String path) throws IOException {
+        return SnapshotWriter.readFile(path, RestaurantSnapshot::map);
+    }
+
+    /**
+     * Memory-maps a snapshot file and decodes its columns into Restaurant objects.
+     *
+     * @param file The snapshot file
+     * @return A map containing restaurant IDs as keys and corresponding Restaurant objects as values
+     * @throws IOException If an I/O error occurs or the file is not a valid snapshot
+     */
+    private static Map<String, Restaurant> map(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Unsupported restaurant snapshot " + file);
+        }
+        int count = buffer.getInt();
+
+        String[] dictionary = new String[buffer.getInt()];
+        for (int d = 0; d < dictionary.length; d++) {
+            int length = buffer.getInt();
+            dictionary[d] = decode(buffer, buffer.position(), length);
+            buffer.position(buffer.position() + length);
+        }
+
+        List<Restaurant> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) rows.add(new Restaurant());
+
+        for (Column column : DICTIONARY_COLUMNS) {
+            for (Restaurant restaurant : rows) {
+                int code = buffer.getInt();
+                column.setter().accept(restaurant, code == NULL_CODE ? null : dictionary[code]);
+            }
+        }
+        for (Restaurant restaurant : rows) {
+            float latitude = buffer.getFloat();
+            restaurant.setLatitude(Float.isNaN(latitude) ? null : latitude);
+        }
+        for (Restaurant restaurant : rows) {
+            float longitude = buffer.getFloat();
+            restaurant.setLongitude(Float.isNaN(longitude) ? null : longitude);
+        }
+        for (Restaurant restaurant : rows) {
+            int greenStar = buffer.getInt();
+            restaurant.setGreenStar(greenStar == NULL_CODE ? null : greenStar);
+        }
+
+        int textColumnsStart = buffer.position();
+        int textStart = textColumnsStart + TEXT_COLUMNS.size() * 2 * count * Integer.BYTES + Integer.BYTES;
+        // The long texts are only decoded later: a truncated file must be rejected now, while
+        // an older generation can still be read in its place
+        if (textStart > buffer.limit() || textStart + buffer.getInt(textStart - Integer.BYTES) != buffer.limit()) {
+            throw new IOException("Truncated restaurant snapshot " + file);
+        }
+        for (int c = 0; c < EAGER_TEXT_COLUMNS; c++) {
+            for (int i = 0; i < count; i++) {
+                TEXT_COLUMNS.get(c).setter().accept(rows.get(i), decodeText(buffer, textColumnsStart, textStart, count, c, i));
+            }
+        }
+
+        MappedDetails details = new MappedDetails(buffer, textColumnsStart, textStart, count);
+        for (int i = 0; i < count; i++) rows.get(i).setDetailsSource(details, i);
+
+        Map<String, Restaurant> restaurants = new HashMap<>(count * 2);
+        for (Restaurant restaurant : rows) restaurants.put(restaurant.getId(), restaurant);
+        return restaurants;
+    }
+
+    /**
+     * Decodes the value of a free-text column for a given row.
+     *
+     * @param buffer           The buffer containing the snapshot
+     * @param textColumnsStart The absolute position of the first offset column
+     * @param textStart        The absolute position of the text area
+     * @param count            The number of restaurants in the snapshot
+     * @param column           The index of the free-text column
+     * @param row              The row of the restaurant
+     * @return The decoded value, or null if the value is missing
+     */
+    private static String decodeText(MappedByteBuffer buffer, int textColumnsStart, int textStart, int count, int column, int row) {
+        int offsetsStart = textColumnsStart + column * 2 * count * Integer.BYTES;
+        int lengthsStart = offsetsStart + count * Integer.BYTES;
+        int length = buffer.getInt(lengthsStart + row * Integer.BYTES);
+        if (length == NULL_CODE) return null;
+        return decode(buffer, textStart + buffer.getInt(offsetsStart + row * Integer.BYTES), length);
+    }
+
+    /**
+     * Decodes a UTF-8 string stored at an absolute position of the buffer.
+     *
+     * @param buffer   The buffer containing the string
+     * @param position The absolute position of the first byte
+     * @param length   The number of bytes of the string
+     * @return The decoded string
+     */
+    private static String decode(MappedByteBuffer buffer, int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lazy source of the long text fields, decoding them from the mapped snapshot on demand.
+     * <p>
+     * The details of the most recently opened restaurants are kept in a small LRU cache,
+     * so that the detail view does not decode the same text over and over.
+     * </p>
+     */
+    private static class MappedDetails implements Restaurant.DetailsSource {
+        /**
+         * The buffer containing the snapshot.
+         */
+        private final MappedByteBuffer buffer;
+
+        /**
+         * The absolute position of the first offset column.
+         */
+        private final int textColumnsStart;
+
+        /**
+         * The absolute position of the text area.
+         */
+        private final int textStart;
+
+        /**
+         * The number of restaurants in the snapshot.
+         */
+        private final int count;
+
+        /**
+         * Recently loaded details, in access order.
+         */
+        private final Map<Integer, Restaurant.Details> cache = new LinkedHashMap<>(DETAILS_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Restaurant.Details> eldest) {
+                return size() > DETAILS_CACHE_SIZE;
+            }
+        };
+
+        /**
+         * Creates a lazy source over a mapped snapshot.
+         *
+         * @param buffer           The buffer containing the snapshot
+         * @param textColumnsStart The absolute position of the first offset column
+         * @param textStart        The absolute position of the text area
+         * @param count            The number of restaurants in the snapshot
+         */
+        MappedDetails(MappedByteBuffer buffer, int textColumnsStart, int textStart, int count) {
+            this.buffer = buffer;
+            this.textColumnsStart = textColumnsStart;
+            this.textStart = textStart;
+            this.count = count;
+        }
+
+        @Override
+        public synchronized Restaurant.Details load(int row) {
+            return cache.computeIfAbsent(row, r -> new Restaurant.Details(
+                    decodeText(buffer, textColumnsStart, textStart, count, EAGER_TEXT_COLUMNS, r),
+                    decodeText(buffer, textColumnsStart, textStart, count, EAGER_TEXT_COLUMNS + 1, r),
+                    decodeText(buffer, textColumnsStart, textStart, count, FACILITIES_COLUMN, r),
+                    decodeText(buffer, textColumnsStart, textStart, count, EAGER_TEXT_COLUMNS + 3, r)));
+        }
+
+        /**
+         * Decodes only the facilities column, without going through the cache: indexing the
+         * facilities of the whole catalogue neither decodes every description nor evicts the
+         * recently opened details.
+         */
+        @Override
+        public synchronized String facilities(int row) {
+            Restaurant.Details details = cache.get(row);
+            if (details != null) return details.facilities();
+            return decodeText(buffer, textColumnsStart, textStart, count, FACILITIES_COLUMN, row);
+        }
+    }
+}
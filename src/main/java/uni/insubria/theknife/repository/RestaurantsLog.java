@@ -0,0 +1,129 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import uni.insubria.theknife.model.Restaurant;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Append-only log of restaurant mutations, as written before the changes were kept in a {@link Store}.
+ * <p>
+ * Every add, edit or delete was written as a single compact JSON line next to the binary
+ * snapshot, and replayed on top of it when restaurants were loaded. The log is now only
+ * read once, to import the changes not yet compacted into the snapshot into the store of
+ * the changes of {@link RestaurantRepository}.
+ * </p>
+ */
+@Slf4j
+public class RestaurantsLog {
+    /**
+     * Default constructor for the RestaurantsLog class.
+     * <p>
+     * This constructor is not meant to be used directly as this class only provides
+     * static methods. The class is not designed to be instantiated.
+     * </p>
+     */
+    public RestaurantsLog() {
+        // Default constructor - not meant to be used
+    }
+
+    /**
+     * Path to the log file containing the restaurant mutations not yet compacted into the snapshot.
+     */
+    private static final String RESTAURANTS_LOG = "data/restaurants.log";
+
+    /**
+     * Jackson ObjectMapper instance reading the compact, single-line JSON records.
+     */
+    private static final ObjectMapper objectMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+
+    /**
+     * Shared Jackson ObjectReader binding each line of the log to an {@link Entry}.
+     */
+    private static final ObjectReader entryReader = objectMapper.readerFor(Entry.class);
+
+    /**
+     * Types of mutation that can be recorded in the log.
+     */
+    public enum OPERATION {
+        /**
+         * A restaurant has been added or edited; the record holds its new version.
+         */
+        PUT,
+
+        /**
+         * A restaurant has been deleted; the record only holds its ID.
+         */
+        DELETE
+    }
+
+    /**
+     * A single record of the log: the operation and the restaurant it applies to.
+     */
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry {
+        /**
+         * The type of mutation.
+         */
+        private OPERATION op;
+
+        /**
+         * The restaurant affected by the mutation.
+         */
+        private Restaurant restaurant;
+    }
+
+    /**
+     * Replays all the records of the log as changes to the snapshot, the last record of a restaurant winning.
+     * <p>
+     * A truncated or malformed record (e.g. the last line after a crash) is skipped.
+     * </p>
+     *
+     * @param changes The changes to the snapshot, keyed by restaurant ID, updated in place
+     */
+    public static synchronized void replay(Map<String, RestaurantRepository.Change> changes) {
+        File file = new File(RESTAURANTS_LOG);
+        if (!file.exists()) return;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                try {
+                    Entry entry = entryReader.readValue(line);
+                    String id = entry.getRestaurant().getId();
+                    if (entry.getOp() == OPERATION.DELETE) {
+                        changes.put(id, new RestaurantRepository.Change(true, null));
+                    } else {
+                        changes.put(id, new RestaurantRepository.Change(false, entry.getRestaurant()));
+                    }
+                } catch (IOException e) {
+                    log.warn("Skipping invalid restaurants log record", e);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Invalid restaurants log file", e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/* 
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import uni.insubria.theknife.model.Review;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Append-only log of review mutations, as written by the former JSON store of the reviews.
+ * <p>
+ * Every add, edit, delete or owner answer was written as a single compact JSON line next
+ * to the reviews snapshot, and replayed on top of it when reviews were loaded. Reviews are
+ * now kept in a {@link Store}; the log is only read once, to import the changes not yet
+ * compacted into {@code reviews.json} together with it.
+ * </p>
+ */
+@Slf4j
+public class ReviewsLog {
+    /**
+     * Default constructor for the ReviewsLog class.
+     * <p>
+     * This constructor is not meant to be used directly as this class only provides
+     * static methods. The class is not designed to be instantiated.
+     * </p>
+     */
+    public ReviewsLog() {
+        // Default constructor - not meant to be used
+    }
+
+    /**
+     * Path to the log file containing the review mutations not yet compacted into the snapshot.
+     */
+    private static final String REVIEWS_LOG = "data/reviews.log";
+
+    /**
+     * Jackson ObjectMapper instance producing compact, single-line JSON records.
+     */
+    private static final ObjectMapper objectMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+
+    /**
+     * Shared Jackson ObjectReader binding each line of the log to an {@link Entry}.
+     */
+    private static final ObjectReader entryReader = objectMapper.readerFor(Entry.class);
+
+    /**
+     * Types of mutation that can be recorded in the log.
+     */
+    public enum OPERATION {
+        /**
+         * A new review has been added.
+         */
+        ADD,
+
+        /**
+         * An existing review has been modified by its author.
+         */
+        EDIT,
+
+        /**
+         * A review has been deleted.
+         */
+        DELETE,
+
+        /**
+         * The restaurant owner has answered a review.
+         */
+        ANSWER
+    }
+
+    /**
+     * A single record of the log: the operation and the (simplified) review it applies to.
+     */
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry {
+        /**
+         * The type of mutation.
+         */
+        private OPERATION op;
+
+        /**
+         * The review affected by the mutation.
+         */
+        private Review review;
+    }
+
+    /**
+     * Replays all the records of the log on top of the given reviews.
+     * <p>
+     * A truncated or malformed record (e.g. the last line after a crash) is skipped.
+     * </p>
+     *
+     * @param reviews The reviews loaded from the snapshot, updated in place
+     */
+    public static synchronized void replay(Map<String, Review> reviews) {
+        File file = new File(REVIEWS_LOG);
+        if (!file.exists()) return;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                try {
+                    Entry entry = entryReader.readValue(line);
+                    if (entry.getOp() == OPERATION.DELETE) {
+                        reviews.remove(entry.getReview().getId());
+                    } else {
+                        reviews.put(entry.getReview().getId(), entry.getReview());
+                    }
+                } catch (IOException e) {
+                    log.warn("Skipping invalid reviews log record", e);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Invalid reviews log file", e);
+        }
+    }
+}
@@ -8,14 +8,13 @@ package uni.insubria.theknife.repository;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import uni.insubria.theknife.model.RatingSummary;
 import uni.insubria.theknife.model.Restaurant;
 import uni.insubria.theknife.model.Review;
 import uni.insubria.theknife.model.User;
+import uni.insubria.theknife.util.ContentId;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
 
@@ -32,6 +31,7 @@ import java.util.*;
  * between reviews, users, and restaurants.
  * </p>
  */
+@Slf4j
 public class ReviewsRepository {
     /**
      * Default constructor for the ReviewsRepository class.
@@ -52,14 +52,41 @@ public class ReviewsRepository {
     private static final ObjectMapper objectMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL).setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
 
     /**
-     * Jackson ObjectWriter instance configured for pretty printing JSON output.
+     * Path to the JSON file the reviews were stored in before the {@link Store}, imported on first use.
      */
-    private static final ObjectWriter objectWriter = objectMapper.writer().withDefaultPrettyPrinter();
+    private static final String REVIEWS_JSON = "data/reviews.json";
 
     /**
-     * Path to the JSON file used for storing and retrieving review data.
+     * The store of the reviews, or null if not opened yet.
      */
-    private static final String REVIEWS_JSON = "data/reviews.json";
+    private static Store<String, Review> store = null;
+
+    /**
+     * In-memory copy of all reviews keyed by review ID.
+     * Lazily populated by {@link #loadReviews()} so that the JSON file is parsed only once.
+     */
+    private static Map<String, Review> reviews = null;
+
+    /**
+     * Index of reviews grouped by restaurant ID, kept in sync with {@link #reviews}.
+     */
+    private static final Map<String, List<Review>> reviewsByRestaurantId = new HashMap<>();
+
+    /**
+     * Index of reviews grouped by author username, kept in sync with {@link #reviews}.
+     */
+    private static final Map<String, List<Review>> reviewsByUsername = new HashMap<>();
+
+    /**
+     * Rating aggregates by restaurant ID, kept in sync with {@link #reviews}.
+     */
+    private static final Map<String, RatingSummary> ratingsByRestaurantId = new HashMap<>();
+
+    /**
+     * Stars counted in the rating aggregates for every indexed review, keyed by review ID.
+     * Reviews are edited in place, so the previous stars cannot be read back from the review.
+     */
+    private static final Map<String, Integer> indexedStars = new HashMap<>();
 
     /**
      * Enumeration of possible error codes returned by repository operations.
@@ -90,78 +117,201 @@ public class ReviewsRepository {
      * @return A list of Review objects associated with the specified restaurant,
      *         or an empty list if the restaurant is null
      */
-    public static List<Review> reviewsByRestaurant(Restaurant restaurant) {
+    public static synchronized List<Review> reviewsByRestaurant(Restaurant restaurant) {
+        if (restaurant != null) {
+            loadReviews();
+            return new ArrayList<>(reviewsByRestaurantId.getOrDefault(restaurant.getId(), List.of()));
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Retrieves the rating aggregates of a specific restaurant.
+     * <p>
+     * The returned summary is shared and kept up to date by the CRUD methods.
+     * </p>
+     *
+     * @param restaurant The restaurant for which to retrieve the aggregates
+     * @return The rating aggregates of the restaurant, or an empty summary if the restaurant is null
+     */
+    public static synchronized RatingSummary ratingOf(Restaurant restaurant) {
         if (restaurant != null) {
-            return loadReviews().values().stream().filter(review -> review.getRestaurant().getId().equals(restaurant.getId())).toList();
+            loadReviews();
+            return ratingsByRestaurantId.computeIfAbsent(restaurant.getId(), k -> new RatingSummary());
+        }
+        return new RatingSummary();
+    }
+
+    /**
+     * Retrieves all reviews written by a specific user.
+     *
+     * @param user The user whose reviews should be retrieved
+     * @return A list of Review objects written by the specified user,
+     *         or an empty list if the user is null
+     */
+    public static synchronized List<Review> reviewsByUser(User user) {
+        if (user != null) {
+            loadReviews();
+            return new ArrayList<>(reviewsByUsername.getOrDefault(user.getUsername(), List.of()));
         }
         return new ArrayList<>();
     }
 
     /**
-     * Saves the provided map of reviews to a JSON file.
+     * Saves the provided map of reviews to the store.
      * <p>
-     * This method simplifies the review objects before saving to reduce JSON file size
+     * This method simplifies the review objects before saving to reduce the size of the store
      * by removing unnecessary information and keeping only essential references.
      * </p>
      *
      * @param reviews A map containing review IDs as keys and corresponding Review objects as values
-     * @throws IOException If an I/O error occurs during file writing
+     * @throws IOException If an I/O error occurs during writing
      */
-    public static void saveReviews(Map<String, Review> reviews) throws IOException {
+    public static synchronized void saveReviews(Map<String, Review> reviews) throws IOException {
         Map<String, Review> simplifiedReviews = new HashMap<>();
 
-        //Reduce json size by removing useless information
+        //Reduce size by removing useless information
         for (Map.Entry<String, Review> entry : reviews.entrySet()) {
-            Review review = entry.getValue();
-            User user = new User().setUsername(review.getUser().getUsername());
-            Restaurant restaurant = new Restaurant().setId(review.getRestaurant().getId());
-
-            Review simplifiedReview = new Review()
-                    .setUser(user)
-                    .setRestaurant(restaurant)
-                    .setId(review.getId())
-                    .setContent(review.getContent())
-                    .setStars(review.getStars())
-                    .setAnswer(review.getAnswer());
-
-            simplifiedReviews.put(entry.getKey(), simplifiedReview);
+            simplifiedReviews.put(entry.getKey(), simplify(entry.getValue()));
+        }
+
+        store().putAll(simplifiedReviews);
+    }
+
+    /**
+     * Returns the store of the reviews, opening it if needed.
+     * <p>
+     * The first time the store is opened, the reviews of the former JSON file, with the
+     * changes of its {@link ReviewsLog}, are imported into it.
+     * </p>
+     *
+     * @return The store
+     * @throws IOException If the store cannot be opened
+     */
+    private static Store<String, Review> store() throws IOException {
+        if (store == null) {
+            store = Stores.open("reviews", REVIEWS_JSON, objectMapper, Review.class, ReviewsLog::replay);
         }
+        return store;
+    }
+
+    /**
+     * Creates a copy of a review that only keeps the references (username and restaurant ID)
+     * to its user and restaurant, as written to the store.
+     *
+     * @param review The review to simplify
+     * @return The simplified copy of the review
+     */
+    private static Review simplify(Review review) {
+        User user = new User().setUsername(review.getUser().getUsername());
+        Restaurant restaurant = new Restaurant().setId(review.getRestaurant().getId());
+
+        return new Review()
+                .setUser(user)
+                .setRestaurant(restaurant)
+                .setId(review.getId())
+                .setContent(review.getContent())
+                .setStars(review.getStars())
+                .setAnswer(review.getAnswer());
+    }
 
-        FileWriter fileWriter = new FileWriter(REVIEWS_JSON, false);
-        objectWriter.writeValue(fileWriter, simplifiedReviews);
-        fileWriter.close();
+    /**
+     * Writes a new or modified review to the store.
+     *
+     * @param review The review
+     * @throws IOException If an I/O error occurs while writing
+     */
+    private static void persist(Review review) throws IOException {
+        store().put(review.getId(), simplify(review));
     }
 
     /**
-     * Loads all reviews from the JSON file.
+     * Loads all reviews from the store.
      * <p>
-     * If the reviews file doesn't exist, creates a new empty file.
+     * The store is read only on the first call; the result is kept in memory together
+     * with the by-restaurant and by-user indexes, which are then updated by the CRUD methods.
      * </p>
      *
-     * @return A map containing review IDs as keys and corresponding Review objects as values
+     * @return An unmodifiable map containing review IDs as keys and corresponding Review objects as values
+     */
+    public static synchronized Map<String, Review> loadReviews() {
+        if (reviews == null) {
+            reviews = readReviews();
+            reviewsByRestaurantId.clear();
+            reviewsByUsername.clear();
+            ratingsByRestaurantId.clear();
+            indexedStars.clear();
+            reviews.values().forEach(ReviewsRepository::index);
+        }
+        return Collections.unmodifiableMap(reviews);
+    }
+
+    /**
+     * Reads all reviews from the store.
+     *
+     * @return A map containing review IDs as keys and corresponding Review objects as values,
+     *         empty if the store cannot be read
      */
-    public static Map<String, Review> loadReviews() {
+    private static Map<String, Review> readReviews() {
         try {
-            File file = new File(REVIEWS_JSON);
-            if (!file.exists()) {
-                file.createNewFile();
-                objectMapper.writeValue(file, new HashMap<>());
-            }
-            Map<String, Review> reviews = objectMapper.readValue(new FileInputStream(file), Map.class);
-            reviews.keySet().forEach(key -> reviews.put(key, objectMapper.convertValue(reviews.get(key), Review.class)));
-            return reviews;
+            return new HashMap<>(store().toMap());
         } catch (IOException e) {
+            log.warn("Invalid reviews store", e);
             return new HashMap<>();
         }
     }
 
+    /**
+     * Adds a review to the by-restaurant and by-user indexes and to the rating aggregates.
+     *
+     * @param review The review to index
+     */
+    private static void index(Review review) {
+        if (review.getRestaurant() != null) {
+            String restaurantId = review.getRestaurant().getId();
+            reviewsByRestaurantId.computeIfAbsent(restaurantId, k -> new ArrayList<>()).add(review);
+
+            RatingSummary rating = ratingsByRestaurantId.computeIfAbsent(restaurantId, k -> new RatingSummary());
+            if (review.getStars() != null) {
+                rating.add(review.getStars());
+                indexedStars.put(review.getId(), review.getStars());
+            }
+            review.getRestaurant().setRating(rating);
+        }
+        if (review.getUser() != null) {
+            reviewsByUsername.computeIfAbsent(review.getUser().getUsername(), k -> new ArrayList<>()).add(review);
+        }
+    }
+
+    /**
+     * Removes a review from the by-restaurant and by-user indexes and from the rating aggregates.
+     *
+     * @param review The review to remove
+     */
+    private static void unindex(Review review) {
+        if (review.getRestaurant() != null) {
+            List<Review> byRestaurant = reviewsByRestaurantId.get(review.getRestaurant().getId());
+            if (byRestaurant != null) byRestaurant.removeIf(r -> r.getId().equals(review.getId()));
+
+            Integer stars = indexedStars.remove(review.getId());
+            RatingSummary rating = ratingsByRestaurantId.get(review.getRestaurant().getId());
+            if (stars != null && rating != null) rating.remove(stars);
+        }
+        if (review.getUser() != null) {
+            List<Review> byUser = reviewsByUsername.get(review.getUser().getUsername());
+            if (byUser != null) byUser.removeIf(r -> r.getId().equals(review.getId()));
+        }
+    }
+
     //#region Review CRUD
 
     /**
      * Adds a new review to the repository.
      * <p>
      * This method adds a review to the repository and updates the associated restaurant's
-     * review list. If the review already exists (based on ID), the operation fails.
+     * review list. If the review already exists (based on ID), the operation fails;
+     * if its ID is taken by a review of another user or restaurant, the next candidate
+     * ID of {@link ContentId} is used instead.
      * </p>
      *
      * @param review The Review object to add
@@ -170,19 +320,25 @@ public class ReviewsRepository {
      *         - SERVICE_ERROR if an error occurs during saving
      *         - NONE if the review is successfully added
      */
-    public static ERROR_CODE addReview(final Review review) {
+    public static synchronized ERROR_CODE addReview(final Review review) {
         try {
-            Map<String, Review> reviews = loadReviews();
+            loadReviews();
 
+            // Same ID for another user or restaurant: a hash collision, not a second review
+            for (int attempt = 1; collides(reviews.get(review.getId()), review); attempt++) {
+                review.setId(ContentId.candidate(attempt, review.getUser().getUsername(), review.getRestaurant().getId()));
+            }
             if (reviews.containsKey(review.getId())) return ERROR_CODE.DUPLICATED;
 
             reviews.put(review.getId(), review);
 
             try {
-                saveReviews(reviews);
+                persist(review);
             } catch (IOException e) {
+                reviews.remove(review.getId());
                 return ERROR_CODE.SERVICE_ERROR;
             }
+            index(review);
 
             if (review.getRestaurant().getReviews() == null) {
                 review.getRestaurant().setReviews(new ArrayList<>());
@@ -199,6 +355,21 @@ public class ReviewsRepository {
         }
     }
 
+    /**
+     * Tells whether a stored review has the ID of a review by another user or of another restaurant.
+     *
+     * @param stored The review stored with the same ID, or null
+     * @param review The review being added
+     * @return true if the two reviews only share the ID
+     */
+    private static boolean collides(Review stored, Review review) {
+        if (stored == null) return false;
+        String username = stored.getUser() == null ? null : stored.getUser().getUsername();
+        String restaurantId = stored.getRestaurant() == null ? null : stored.getRestaurant().getId();
+        return !(Objects.equals(username, review.getUser().getUsername())
+                && Objects.equals(restaurantId, review.getRestaurant().getId()));
+    }
+
     /**
      * Deletes a review from the repository.
      * <p>
@@ -210,11 +381,19 @@ public class ReviewsRepository {
      *         - SERVICE_ERROR if an error occurs during saving
      *         - NONE if the review is successfully deleted
      */
-    public static ERROR_CODE deleteReview(Review review) {
+    public static synchronized ERROR_CODE deleteReview(Review review) {
         try {
-            Map<String, Review> reviews = loadReviews();
-            reviews.remove(review.getId());
-            saveReviews(reviews);
+            loadReviews();
+            Review removed = reviews.remove(review.getId());
+            if (removed != null) {
+                try {
+                    store().remove(removed.getId());
+                } catch (IOException e) {
+                    reviews.put(removed.getId(), removed);
+                    return ERROR_CODE.SERVICE_ERROR;
+                }
+                unindex(removed);
+            }
             return ERROR_CODE.NONE;
         } catch (Exception e) {
             e.printStackTrace();
@@ -234,11 +413,40 @@ public class ReviewsRepository {
      *         - NONE if the review is successfully updated
      */
     public static ERROR_CODE editReview(Review review) {
+        return updateReview(review);
+    }
+
+    /**
+     * Stores the restaurant owner's answer to an existing review.
+     *
+     * @param review The Review object containing the answer
+     * @return An ERROR_CODE indicating the result of the operation:
+     *         - SERVICE_ERROR if the review doesn't exist or an error occurs during saving
+     *         - NONE if the answer is successfully stored
+     */
+    public static ERROR_CODE answerReview(Review review) {
+        return updateReview(review);
+    }
+
+    /**
+     * Replaces an existing review and writes it to the store.
+     *
+     * @param review The Review object with updated information
+     * @return An ERROR_CODE indicating the result of the operation
+     */
+    private static synchronized ERROR_CODE updateReview(Review review) {
         try {
-            Map<String, Review> reviews = loadReviews();
+            loadReviews();
             if (reviews.containsKey(review.getId())) {
-                reviews.put(review.getId(), review);
-                saveReviews(reviews);
+                Review previous = reviews.put(review.getId(), review);
+                try {
+                    persist(review);
+                } catch (IOException e) {
+                    reviews.put(previous.getId(), previous);
+                    return ERROR_CODE.SERVICE_ERROR;
+                }
+                unindex(previous);
+                index(review);
                 return ERROR_CODE.NONE;
             }
             return ERROR_CODE.SERVICE_ERROR;
@@ -0,0 +1,372 @@
+/* 
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Crash-safe writer for the JSON stores of the TheKnife application.
+ * <p>
+ * A snapshot is first written to a temporary file in the same directory as the target,
+ * flushed to disk and then atomically renamed over the original, so that a crash or a
+ * full disk can never leave a half-written store behind. The previous snapshots are kept
+ * as rotated generations ({@code file.1}, {@code file.2}, ...) and are used as a fallback
+ * when the newest one cannot be read. The current snapshot is linked (or copied) to the
+ * first generation rather than renamed, so that the file always exists.
+ * </p>
+ * <p>
+ * Snapshots that stay memory-mapped while the application runs are written with
+ * {@link #writeVersion} instead: every generation gets a new numbered file name
+ * ({@code file-1}, {@code file-2}, ...) and no existing file is ever renamed or overwritten,
+ * which is not possible on Windows while a file is mapped. Old generations that cannot be
+ * deleted yet are deleted by a later write.
+ * </p>
+ * <p>
+ * Reads and writes are serialised, so that a snapshot is never read while its generations
+ * are being rotated.
+ * </p>
+ */
+@Slf4j
+public class SnapshotWriter {
+    /**
+     * Default constructor for the SnapshotWriter class.
+     * <p>
+     * This constructor is not meant to be used directly as this class only provides
+     * static methods. The class is not designed to be instantiated.
+     * </p>
+     */
+    public SnapshotWriter() {
+        // Default constructor - not meant to be used
+    }
+
+    /**
+     * Number of previous generations kept next to each snapshot.
+     */
+    private static final int GENERATIONS = 3;
+
+    /**
+     * Suffix of the temporary file used while writing a snapshot.
+     */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Separator between the name of a snapshot and the number of a generation written by {@link #writeVersion}.
+     */
+    private static final String VERSION_SEPARATOR = "-";
+
+    /**
+     * Callback writing the content of a snapshot to a stream.
+     */
+    @FunctionalInterface
+    public interface Writer {
+        /**
+         * Writes the snapshot content.
+         *
+         * @param out The stream to write to
+         * @throws IOException If an I/O error occurs while writing
+         */
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Callback parsing the content of a snapshot from a stream.
+     *
+     * @param <T> The type of the parsed content
+     */
+    @FunctionalInterface
+    public interface Reader<T> {
+        /**
+         * Reads the snapshot content.
+         *
+         * @param in The stream to read from
+         * @return The parsed content
+         * @throws IOException If an I/O error occurs or the content is invalid
+         */
+        T read(InputStream in) throws IOException;
+    }
+
+    /**
+     * Callback parsing a snapshot directly from its file, e.g. to memory-map it.
+     *
+     * @param <T> The type of the parsed content
+     */
+    @FunctionalInterface
+    public interface FileReader<T> {
+        /**
+         * Reads the snapshot content.
+         *
+         * @param file The path of the generation to read
+         * @return The parsed content
+         * @throws IOException If an I/O error occurs or the content is invalid
+         */
+        T read(Path file) throws IOException;
+    }
+
+    /**
+     * Atomically replaces the snapshot at the given path, rotating the previous generations.
+     *
+     * @param path   The path of the snapshot file
+     * @param writer The callback writing the new content
+     * @throws IOException If an I/O error occurs; the current snapshot is left untouched in that case
+     */
+    public static synchronized void write(String path, Writer writer) throws IOException {
+        Path target = Path.of(path).toAbsolutePath();
+        Path tmp = writeTemporary(target, writer);
+        rotate(target);
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(target.getParent());
+    }
+
+    /**
+     * Writes a new generation of the snapshot at the given path under a new file name,
+     * then deletes the generations older than the last {@link #GENERATIONS} ones.
+     * <p>
+     * Unlike {@link #write}, no existing file is renamed or replaced, so the generations can
+     * stay memory-mapped. A generation that cannot be deleted (e.g. because it is still mapped
+     * on Windows) is left in place until a later write.
+     * </p>
+     *
+     * @param path   The path of the snapshot file
+     * @param writer The callback writing the new content
+     * @throws IOException If an I/O error occurs; the current snapshot is left untouched in that case
+     */
+    public static synchronized void writeVersion(String path, Writer writer) throws IOException {
+        Path target = Path.of(path).toAbsolutePath();
+        List<Path> versions = versions(target);
+        int next = versions.isEmpty() ? 1 : versionOf(target, versions.get(0)) + 1;
+
+        Path tmp = writeTemporary(target, writer);
+        Path version = target.resolveSibling(target.getFileName() + VERSION_SEPARATOR + next);
+        Files.move(tmp, version, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(target.getParent());
+
+        // The generations written by write() are older than any numbered one
+        List<Path> obsolete = new ArrayList<>(versions.subList(Math.min(GENERATIONS, versions.size()), versions.size()));
+        for (int generation = 0; generation <= GENERATIONS; generation++) obsolete.add(generation(target, generation));
+        for (Path file : obsolete) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Still in use, deleted by a later write
+            }
+        }
+    }
+
+    /**
+     * Writes the content of a snapshot to the temporary file next to its target and flushes it to disk.
+     *
+     * @param target The path of the snapshot file
+     * @param writer The callback writing the content
+     * @return The path of the temporary file
+     * @throws IOException If an I/O error occurs; the temporary file is deleted in that case
+     */
+    private static Path writeTemporary(Path target, Writer writer) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + TMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel)) {
+                @Override
+                public void close() throws IOException {
+                    // Serializers close the target when done: only flush, the channel is still needed for force()
+                    flush();
+                }
+            };
+            writer.write(out);
+            out.flush();
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return tmp;
+    }
+
+    /**
+     * Reads the newest valid generation of the snapshot at the given path.
+     *
+     * @param path   The path of the snapshot file
+     * @param reader The callback parsing the content
+     * @param <T>    The type of the parsed content
+     * @return The content of the newest generation that could be parsed
+     * @throws FileNotFoundException If no generation of the snapshot exists
+     * @throws IOException           If no existing generation could be parsed
+     */
+    public static synchronized <T> T read(String path, Reader<T> reader) throws IOException {
+        return readFile(path, file -> {
+            try (InputStream in = Files.newInputStream(file)) {
+                return reader.read(in);
+            }
+        });
+    }
+
+    /**
+     * Reads the newest valid generation of the snapshot at the given path, passing the
+     * file itself to the reader instead of a stream.
+     *
+     * @param path   The path of the snapshot file
+     * @param reader The callback parsing the file
+     * @param <T>    The type of the parsed content
+     * @return The content of the newest generation that could be parsed
+     * @throws FileNotFoundException If no generation of the snapshot exists
+     * @throws IOException           If no existing generation could be parsed
+     */
+    public static synchronized <T> T readFile(String path, FileReader<T> reader) throws IOException {
+        IOException failure = null;
+        List<Path> candidates = candidates(Path.of(path));
+        for (int generation = 0; generation < candidates.size(); generation++) {
+            Path candidate = candidates.get(generation);
+            try {
+                T content = reader.read(candidate);
+                if (generation > 0) {
+                    log.info("Restored {} from generation {}", path, generation);
+                }
+                return content;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Invalid snapshot {}", candidate, e);
+                failure = e instanceof IOException io ? io : new IOException(e);
+            }
+        }
+        throw failure != null ? failure : new FileNotFoundException(path);
+    }
+
+    /**
+     * Checks whether any generation of the snapshot at the given path exists.
+     *
+     * @param path The path of the snapshot file
+     * @return true if the snapshot or one of its previous generations exists, false otherwise
+     */
+    public static synchronized boolean exists(String path) {
+        try {
+            return !candidates(Path.of(path)).isEmpty();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lists the existing generations of a snapshot, newest first: the numbered ones written
+     * by {@link #writeVersion}, then the rotated ones written by {@link #write}.
+     *
+     * @param target The path of the snapshot file
+     * @return The paths of the existing generations
+     * @throws IOException If the directory of the snapshot cannot be listed
+     */
+    private static List<Path> candidates(Path target) throws IOException {
+        List<Path> candidates = versions(target);
+        for (int generation = 0; generation <= GENERATIONS; generation++) {
+            Path candidate = generation(target, generation);
+            if (Files.exists(candidate)) candidates.add(candidate);
+        }
+        return candidates;
+    }
+
+    /**
+     * Lists the numbered generations of a snapshot written by {@link #writeVersion}, newest first.
+     *
+     * @param target The path of the snapshot file
+     * @return The paths of the numbered generations
+     * @throws IOException If the directory of the snapshot cannot be listed
+     */
+    private static List<Path> versions(Path target) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        List<Path> versions = new ArrayList<>();
+        if (directory == null || !Files.isDirectory(directory)) return versions;
+        String prefix = target.getFileName() + VERSION_SEPARATOR;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : files) {
+                if (versionOf(target, file) > 0) versions.add(file);
+            }
+        }
+        versions.sort(Comparator.comparingInt((Path file) -> versionOf(target, file)).reversed());
+        return versions;
+    }
+
+    /**
+     * Returns the number of a generation written by {@link #writeVersion}.
+     *
+     * @param target The path of the snapshot file
+     * @param file   The path of the generation
+     * @return The number of the generation, or -1 if the file is not a numbered generation of the snapshot
+     */
+    private static int versionOf(Path target, Path file) {
+        String suffix = file.getFileName().toString().substring(target.getFileName().toString().length() + VERSION_SEPARATOR.length());
+        try {
+            return Integer.parseInt(suffix);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Shifts every existing generation of the snapshot one step back, dropping the oldest one.
+     * <p>
+     * The previous generations are renamed, while the current snapshot is hard-linked (or
+     * copied, where links are not supported) to the first generation: it stays in place
+     * until the new snapshot is moved over it.
+     * </p>
+     *
+     * @param target The path of the snapshot file
+     * @throws IOException If an I/O error occurs while renaming or copying the files
+     */
+    private static void rotate(Path target) throws IOException {
+        for (int generation = GENERATIONS - 1; generation >= 1; generation--) {
+            Path source = generation(target, generation);
+            if (Files.exists(source)) {
+                Files.move(source, generation(target, generation + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (!Files.exists(target)) return;
+
+        Path first = generation(target, 1);
+        Files.deleteIfExists(first);
+        try {
+            Files.createLink(first, target);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(target, first, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns the path of the given generation of a snapshot (0 being the current one).
+     *
+     * @param target     The path of the snapshot file
+     * @param generation The generation number
+     * @return The path of the generation
+     */
+    private static Path generation(Path target, int generation) {
+        return generation == 0 ? target : target.resolveSibling(target.getFileName() + "." + generation);
+    }
+
+    /**
+     * Flushes the directory entry changes (renames) to disk where the platform supports it.
+     *
+     * @param directory The directory containing the snapshot
+     */
+    private static void syncDirectory(Path directory) {
+        if (directory == null) return;
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform (e.g. Windows), the rename is still atomic
+        }
+    }
+}
@@ -0,0 +1,674 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import uni.insubria.theknife.model.Restaurant;
+import uni.insubria.theknife.util.CoordinateBatch;
+import uni.insubria.theknife.util.DistanceCalculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Spatial index of the restaurants, used for distance queries around a point.
+ * <p>
+ * The globe is divided into a grid of {@link #CELL_DEGREES} × {@link #CELL_DEGREES} cells
+ * and every restaurant with coordinates is stored in the bucket of its cell. Queries only
+ * visit the cells that can contain a result:
+ * </p>
+ * <ul>
+ *   <li>"within R km" visits the cells overlapping the bounding box of the circle</li>
+ *   <li>"k nearest" visits rings of cells of growing size around the point, and stops
+ *       as soon as no cell outside the visited area can be closer than the k-th result</li>
+ * </ul>
+ * <p>
+ * Long distance-ordered lists are read one page at a time through a {@link Cursor}.
+ * </p>
+ * <p>
+ * The coordinates of each cell are kept in a {@link CoordinateBatch}, so that the distances
+ * of a whole cell are computed in one pass over primitive arrays.
+ * Restaurants without coordinates are not indexed.
+ * </p>
+ */
+public final class SpatialIndex {
+
+    /**
+     * Size of a grid cell in degrees of latitude and longitude.
+     */
+    private static final double CELL_DEGREES = 0.5;
+
+    /**
+     * Number of cells along a parallel.
+     */
+    private static final int LON_CELLS = (int) Math.round(360 / CELL_DEGREES);
+
+    /**
+     * Number of cells along a meridian.
+     */
+    private static final int LAT_CELLS = (int) Math.round(180 / CELL_DEGREES);
+
+    /**
+     * Restaurants by cell key.
+     */
+    private final Map<Long, Bucket> cells = new HashMap<>();
+
+    /**
+     * Value of {@link #cellByOrdinal} for the ordinals of restaurants not in the index.
+     */
+    private static final long NO_CELL = -1;
+
+    /**
+     * Ordinals of the restaurants, shared with the other views of the catalogue.
+     */
+    private final RestaurantOrdinals ordinals;
+
+    /**
+     * Cell key of every indexed restaurant by ordinal, {@link #NO_CELL} for the others.
+     */
+    private long[] cellByOrdinal = new long[0];
+
+    /**
+     * Number of indexed restaurants.
+     */
+    private int size = 0;
+
+    /**
+     * A restaurant returned by a distance query, together with its distance from the query point.
+     *
+     * @param restaurant The restaurant
+     * @param distance   The distance from the query point in kilometers
+     */
+    public record Neighbor(Restaurant restaurant, double distance) {
+    }
+
+    /**
+     * The restaurants of a cell, with their coordinates at the same indexes.
+     */
+    private static class Bucket {
+        /**
+         * The restaurants in the cell.
+         */
+        final List<Restaurant> restaurants = new ArrayList<>();
+
+        /**
+         * The coordinates of the restaurants.
+         */
+        final CoordinateBatch coordinates = new CoordinateBatch();
+    }
+
+    /**
+     * Scratch arrays of a query, grown to the size of the largest cell visited.
+     */
+    private static class Scratch {
+        /**
+         * Indexes within the cell.
+         */
+        int[] indexes = new int[0];
+
+        /**
+         * Distances in kilometers.
+         */
+        double[] distances = new double[0];
+
+        /**
+         * Makes sure the arrays can hold the results of a cell.
+         *
+         * @param bucket The cell about to be visited
+         */
+        void fit(Bucket bucket) {
+            int size = bucket.restaurants.size();
+            if (distances.length < size) {
+                indexes = new int[size];
+                distances = new double[size];
+            }
+        }
+    }
+
+    /**
+     * Builds the spatial index of a collection of restaurants.
+     *
+     * @param ordinals    The ordinals of the restaurants, shared with the other views
+     * @param restaurants The restaurants to index
+     */
+    public SpatialIndex(RestaurantOrdinals ordinals, Collection<Restaurant> restaurants) {
+        this.ordinals = ordinals;
+        restaurants.forEach(this::add);
+    }
+
+    /**
+     * Adds a restaurant to the index, replacing any previous version with the same ID.
+     *
+     * @param restaurant The restaurant to add
+     */
+    public synchronized void add(Restaurant restaurant) {
+        remove(restaurant);
+        if (restaurant.getLatitude() == null || restaurant.getLongitude() == null) return;
+        long cell = cellOf(restaurant.getLatitude(), restaurant.getLongitude());
+        Bucket bucket = cells.computeIfAbsent(cell, k -> new Bucket());
+        bucket.restaurants.add(restaurant);
+        bucket.coordinates.add(restaurant.getLatitude(), restaurant.getLongitude());
+        int ordinal = ordinals.assign(restaurant.getId());
+        if (ordinal >= cellByOrdinal.length) {
+            int length = cellByOrdinal.length;
+            cellByOrdinal = Arrays.copyOf(cellByOrdinal, Math.max(ordinal + 1, length * 2));
+            Arrays.fill(cellByOrdinal, length, cellByOrdinal.length, NO_CELL);
+        }
+        cellByOrdinal[ordinal] = cell;
+        size++;
+    }
+
+    /**
+     * Re-indexes a restaurant whose coordinates may have changed.
+     *
+     * @param restaurant The restaurant to update
+     */
+    public void update(Restaurant restaurant) {
+        add(restaurant);
+    }
+
+    /**
+     * Removes a restaurant from the index.
+     *
+     * @param restaurant The restaurant to remove
+     */
+    public synchronized void remove(Restaurant restaurant) {
+        int ordinal = ordinals.ordinalOf(restaurant.getId());
+        if (ordinal < 0 || ordinal >= cellByOrdinal.length || cellByOrdinal[ordinal] == NO_CELL) return;
+        long cell = cellByOrdinal[ordinal];
+        cellByOrdinal[ordinal] = NO_CELL;
+        size--;
+        Bucket bucket = cells.get(cell);
+        List<Restaurant> restaurants = bucket.restaurants;
+        for (int i = 0; i < restaurants.size(); i++) {
+            if (!restaurants.get(i).getId().equals(restaurant.getId())) continue;
+            // Same swap-remove as the coordinate batch, to keep the indexes aligned
+            restaurants.set(i, restaurants.get(restaurants.size() - 1));
+            restaurants.remove(restaurants.size() - 1);
+            bucket.coordinates.removeAt(i);
+            break;
+        }
+        if (restaurants.isEmpty()) cells.remove(cell);
+    }
+
+    /**
+     * Returns the restaurants within a given distance from a point.
+     *
+     * @param latitude  The latitude of the point
+     * @param longitude The longitude of the point
+     * @param radiusKm  The maximum distance in kilometers
+     * @param filter    The condition the restaurants must satisfy
+     * @return The restaurants within the distance, closest first
+     */
+    public synchronized List<Neighbor> withinRadius(double latitude, double longitude, double radiusKm, Predicate<Restaurant> filter) {
+        double angle = radiusKm / DistanceCalculator.EARTH_RADIUS_KM;
+        double deltaLat = Math.toDegrees(angle);
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        // Half-width of the bounding box along the parallel; the whole parallel near the poles
+        double deltaLon = angle >= Math.PI / 2 || Math.sin(angle) >= cosLat
+                ? 180 : Math.toDegrees(Math.asin(Math.sin(angle) / cosLat));
+
+        int minLatCell = latCell(Math.max(-90, latitude - deltaLat));
+        int maxLatCell = latCell(Math.min(90, latitude + deltaLat));
+        int lonSpan = deltaLon >= 180 ? LON_CELLS : (int) Math.ceil(deltaLon / CELL_DEGREES) + 1;
+        int centerLonCell = lonCell(longitude);
+
+        List<Neighbor> result = new ArrayList<>();
+        Scratch scratch = new Scratch();
+        for (int latCell = minLatCell; latCell <= maxLatCell; latCell++) {
+            for (int offset = -lonSpan; offset <= lonSpan && offset < LON_CELLS - lonSpan; offset++) {
+                Bucket bucket = cells.get(key(latCell, Math.floorMod(centerLonCell + offset, LON_CELLS)));
+                if (bucket == null) continue;
+                scratch.fit(bucket);
+                int count = DistanceCalculator.withinRadius(latitude, longitude, radiusKm,
+                        bucket.coordinates, scratch.indexes, scratch.distances);
+                for (int i = 0; i < count; i++) {
+                    Restaurant restaurant = bucket.restaurants.get(scratch.indexes[i]);
+                    if (filter.test(restaurant)) result.add(new Neighbor(restaurant, scratch.distances[i]));
+                }
+            }
+        }
+        result.sort(Comparator.comparingDouble(Neighbor::distance));
+        return result;
+    }
+
+    /**
+     * Returns the k restaurants closest to a point.
+     *
+     * @param latitude  The latitude of the point
+     * @param longitude The longitude of the point
+     * @param k         The maximum number of restaurants to return
+     * @param filter    The condition the restaurants must satisfy
+     * @return Up to k restaurants, closest first
+     */
+    public synchronized List<Neighbor> nearest(double latitude, double longitude, int k, Predicate<Restaurant> filter) {
+        return select(new Selection(latitude, longitude, k, -1, Set.of(), filter));
+    }
+
+    /**
+     * Returns a cursor over the restaurants ordered by distance from a point, one page at a time.
+     *
+     * @param latitude  The latitude of the point
+     * @param longitude The longitude of the point
+     * @param filter    The condition the restaurants must satisfy
+     * @return A cursor positioned before the closest restaurant
+     */
+    public Cursor byDistance(double latitude, double longitude, Predicate<Restaurant> filter) {
+        return new Cursor(latitude, longitude, filter);
+    }
+
+    /**
+     * Runs a k nearest query.
+     * <p>
+     * Rings of cells of growing size are visited around the point until no cell outside
+     * the visited area can be closer than the k-th result; if k covers the whole index,
+     * the cells are simply visited in any order.
+     * </p>
+     *
+     * @param selection The query
+     * @return The selected restaurants, closest first
+     */
+    private List<Neighbor> select(Selection selection) {
+        if (selection.k <= 0) return List.of();
+        if (selection.k >= size) {
+            cells.values().forEach(selection::visit);
+            return selection.drain();
+        }
+
+        int centerLatCell = latCell(selection.latitude);
+        int centerLonCell = lonCell(selection.longitude);
+        int maxRing = Math.max(LAT_CELLS, LON_CELLS / 2);
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int latCell = centerLatCell - ring; latCell <= centerLatCell + ring; latCell++) {
+                if (latCell < 0 || latCell >= LAT_CELLS) continue;
+                boolean edgeRow = Math.abs(latCell - centerLatCell) == ring;
+                for (int offset = -ring; offset <= ring; offset += edgeRow || ring == 0 ? 1 : 2 * ring) {
+                    // Skip the cells visited twice when the ring wraps around the antimeridian
+                    if (2 * ring + 1 > LON_CELLS && offset > LON_CELLS - ring - 1) continue;
+                    Bucket bucket = cells.get(key(latCell, Math.floorMod(centerLonCell + offset, LON_CELLS)));
+                    if (bucket != null) selection.visit(bucket);
+                }
+            }
+            if (selection.isFull() && selection.worst() <= minDistanceOutside(selection.latitude, selection.longitude,
+                    centerLatCell, centerLonCell, ring)) {
+                break;
+            }
+        }
+        return selection.drain();
+    }
+
+    /**
+     * State of a k nearest query: a bounded max-heap of the closest restaurants found so far.
+     * <p>
+     * Distances are kept in a primitive array parallel to the restaurants, so that candidates
+     * are compared and discarded without allocating anything; only the k selected restaurants
+     * are wrapped in a {@link Neighbor}, and ordering n candidates costs O(n log k).
+     * </p>
+     */
+    private static class Selection {
+        /**
+         * The latitude of the point.
+         */
+        final double latitude;
+
+        /**
+         * The longitude of the point.
+         */
+        final double longitude;
+
+        /**
+         * The maximum number of restaurants to select.
+         */
+        final int k;
+
+        /**
+         * Restaurants closer than this distance are skipped.
+         */
+        final double from;
+
+        /**
+         * IDs of the restaurants at exactly {@link #from} to skip.
+         */
+        final Set<String> skipped;
+
+        /**
+         * The condition the restaurants must satisfy.
+         */
+        final Predicate<Restaurant> filter;
+
+        /**
+         * Heap of the distances, farthest at index 0.
+         */
+        double[] distances;
+
+        /**
+         * Heap of the restaurants, parallel to {@link #distances}.
+         */
+        Restaurant[] restaurants;
+
+        /**
+         * The number of restaurants in the heap.
+         */
+        int size = 0;
+
+        /**
+         * Scratch arrays for the distances of a cell.
+         */
+        final Scratch scratch = new Scratch();
+
+        /**
+         * Creates a new query.
+         *
+         * @param latitude  The latitude of the point
+         * @param longitude The longitude of the point
+         * @param k         The maximum number of restaurants to select
+         * @param from      The minimum distance of the selected restaurants
+         * @param skipped   IDs of the restaurants at exactly the minimum distance to skip
+         * @param filter    The condition the restaurants must satisfy
+         */
+        Selection(double latitude, double longitude, int k, double from, Set<String> skipped, Predicate<Restaurant> filter) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.k = k;
+            this.from = from;
+            this.skipped = skipped;
+            this.filter = filter;
+            int capacity = Math.max(1, Math.min(k, 16));
+            distances = new double[capacity];
+            restaurants = new Restaurant[capacity];
+        }
+
+        /**
+         * Offers the restaurants of a cell to the heap.
+         *
+         * @param bucket The cell
+         */
+        void visit(Bucket bucket) {
+            scratch.fit(bucket);
+            DistanceCalculator.distancesInKm(latitude, longitude, bucket.coordinates, scratch.distances);
+            for (int i = 0; i < bucket.restaurants.size(); i++) {
+                double distance = scratch.distances[i];
+                if (distance < from || (isFull() && distance >= distances[0])) continue;
+                Restaurant restaurant = bucket.restaurants.get(i);
+                if (distance == from && skipped.contains(restaurant.getId())) continue;
+                if (filter.test(restaurant)) offer(distance, restaurant);
+            }
+        }
+
+        /**
+         * Returns whether k restaurants have been selected.
+         *
+         * @return true if the heap is full
+         */
+        boolean isFull() {
+            return size == k;
+        }
+
+        /**
+         * Returns the distance of the farthest selected restaurant.
+         *
+         * @return The largest distance in the heap
+         */
+        double worst() {
+            return distances[0];
+        }
+
+        /**
+         * Adds a restaurant to the heap, evicting the farthest one if the heap is full.
+         *
+         * @param distance   The distance of the restaurant
+         * @param restaurant The restaurant
+         */
+        private void offer(double distance, Restaurant restaurant) {
+            if (isFull()) {
+                distances[0] = distance;
+                restaurants[0] = restaurant;
+                siftDown(0, size);
+                return;
+            }
+            if (size == distances.length) {
+                int capacity = (int) Math.min(k, 2L * size);
+                distances = Arrays.copyOf(distances, capacity);
+                restaurants = Arrays.copyOf(restaurants, capacity);
+            }
+            int i = size++;
+            distances[i] = distance;
+            restaurants[i] = restaurant;
+            while (i > 0 && distances[(i - 1) / 2] < distances[i]) {
+                swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        /**
+         * Moves an element down the heap until both its children are closer.
+         *
+         * @param i   The index of the element
+         * @param end The end of the heap
+         */
+        private void siftDown(int i, int end) {
+            while (2 * i + 1 < end) {
+                int child = 2 * i + 1;
+                if (child + 1 < end && distances[child + 1] > distances[child]) child++;
+                if (distances[i] >= distances[child]) return;
+                swap(i, child);
+                i = child;
+            }
+        }
+
+        /**
+         * Swaps two elements of the heap.
+         *
+         * @param i The index of the first element
+         * @param j The index of the second element
+         */
+        private void swap(int i, int j) {
+            double distance = distances[i];
+            distances[i] = distances[j];
+            distances[j] = distance;
+            Restaurant restaurant = restaurants[i];
+            restaurants[i] = restaurants[j];
+            restaurants[j] = restaurant;
+        }
+
+        /**
+         * Sorts the heap in place and returns its content.
+         *
+         * @return The selected restaurants, closest first
+         */
+        List<Neighbor> drain() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+            List<Neighbor> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) result.add(new Neighbor(restaurants[i], distances[i]));
+            return result;
+        }
+    }
+
+    /**
+     * Cursor over the restaurants ordered by distance from a point.
+     * <p>
+     * Every page is a k nearest query skipping the restaurants already returned, so
+     * only the restaurants actually shown are ever ordered. Changes to the index between
+     * two pages are seen by the following pages.
+     * </p>
+     */
+    public class Cursor {
+        /**
+         * The latitude of the point.
+         */
+        private final double latitude;
+
+        /**
+         * The longitude of the point.
+         */
+        private final double longitude;
+
+        /**
+         * The condition the restaurants must satisfy.
+         */
+        private final Predicate<Restaurant> filter;
+
+        /**
+         * The distance of the last restaurant returned.
+         */
+        private double last = -1;
+
+        /**
+         * IDs of the restaurants returned at exactly the {@link #last} distance.
+         */
+        private final Set<String> returnedAtLast = new HashSet<>();
+
+        /**
+         * Whether all the restaurants have been returned.
+         */
+        private boolean exhausted = false;
+
+        /**
+         * Creates a cursor positioned before the closest restaurant.
+         *
+         * @param latitude  The latitude of the point
+         * @param longitude The longitude of the point
+         * @param filter    The condition the restaurants must satisfy
+         */
+        private Cursor(double latitude, double longitude, Predicate<Restaurant> filter) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.filter = filter;
+        }
+
+        /**
+         * Returns the next restaurants by distance, moving the cursor past them.
+         *
+         * @param count The maximum number of restaurants to return
+         * @return Up to count restaurants, closest first; an empty list when there are no more
+         */
+        public synchronized List<Neighbor> next(int count) {
+            List<Neighbor> page = peek(count);
+            advance(page, count);
+            return page;
+        }
+
+        /**
+         * Returns the next restaurants by distance, without moving the cursor.
+         * <p>
+         * The cursor is moved past them by {@link #advance(List, int)}, e.g. once they are shown.
+         * </p>
+         *
+         * @param count The maximum number of restaurants to return
+         * @return Up to count restaurants, closest first; an empty list when there are no more
+         */
+        public synchronized List<Neighbor> peek(int count) {
+            if (exhausted) return List.of();
+            synchronized (SpatialIndex.this) {
+                return select(new Selection(latitude, longitude, count, last, returnedAtLast, filter));
+            }
+        }
+
+        /**
+         * Moves the cursor past a page returned by {@link #peek(int)}.
+         *
+         * @param page  The page
+         * @param count The number of restaurants the page was asked for
+         */
+        public synchronized void advance(List<Neighbor> page, int count) {
+            if (page.size() < count) exhausted = true;
+            if (page.isEmpty()) return;
+
+            double distance = page.get(page.size() - 1).distance();
+            if (distance != last) returnedAtLast.clear();
+            last = distance;
+            for (Neighbor neighbor : page) {
+                if (neighbor.distance() == last) returnedAtLast.add(neighbor.restaurant().getId());
+            }
+        }
+
+        /**
+         * Returns whether there may be more restaurants to return.
+         *
+         * @return false once all the restaurants have been returned
+         */
+        public synchronized boolean hasNext() {
+            return !exhausted;
+        }
+    }
+
+    /**
+     * Computes a lower bound of the distance between a point and any cell outside a ring.
+     *
+     * @param latitude      The latitude of the point
+     * @param longitude     The longitude of the point
+     * @param centerLatCell The latitude index of the cell of the point
+     * @param centerLonCell The longitude index of the cell of the point
+     * @param ring          The ring of cells already visited
+     * @return The minimum distance in kilometers from the point to the area outside the ring
+     */
+    private static double minDistanceOutside(double latitude, double longitude, int centerLatCell, int centerLonCell, int ring) {
+        double south = latitude - (centerLatCell - ring) * CELL_DEGREES + 90;
+        double north = (centerLatCell + ring + 1) * CELL_DEGREES - 90 - latitude;
+        double west = longitude - (centerLonCell - ring) * CELL_DEGREES + 180;
+        double east = (centerLonCell + ring + 1) * CELL_DEGREES - 180 - longitude;
+
+        double minLat = Math.toRadians(Math.min(south, north));
+        double minLon = Math.toRadians(Math.min(Math.min(west, east), 90));
+        // Distance from the point to the meridian at the given longitude difference
+        double toMeridian = Math.asin(Math.cos(Math.toRadians(latitude)) * Math.sin(minLon));
+        return DistanceCalculator.EARTH_RADIUS_KM * Math.min(minLat, toMeridian);
+    }
+
+    /**
+     * Returns the key of the cell containing a point.
+     *
+     * @param latitude  The latitude of the point
+     * @param longitude The longitude of the point
+     * @return The key of the cell
+     */
+    private static long cellOf(double latitude, double longitude) {
+        return key(latCell(latitude), lonCell(longitude));
+    }
+
+    /**
+     * Returns the latitude index of the cells containing a latitude.
+     *
+     * @param latitude The latitude
+     * @return The index, between 0 and {@link #LAT_CELLS} - 1
+     */
+    private static int latCell(double latitude) {
+        return Math.min(LAT_CELLS - 1, Math.max(0, (int) Math.floor((latitude + 90) / CELL_DEGREES)));
+    }
+
+    /**
+     * Returns the longitude index of the cells containing a longitude.
+     *
+     * @param longitude The longitude
+     * @return The index, between 0 and {@link #LON_CELLS} - 1
+     */
+    private static int lonCell(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180) / CELL_DEGREES), LON_CELLS);
+    }
+
+    /**
+     * Combines the latitude and longitude indexes of a cell into its key.
+     *
+     * @param latCell The latitude index
+     * @param lonCell The longitude index
+     * @return The key of the cell
+     */
+    private static long key(int latCell, int lonCell) {
+        return (long) latCell * LON_CELLS + lonCell;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Persistent key-value store behind the repositories of the TheKnife application.
+ * <p>
+ * Repositories only read and write single entries through this interface, so that the
+ * cost of a write does not depend on the number of stored entries. The default
+ * implementation is the embedded {@link LogStructuredStore}; the {@link JsonFileStore}
+ * keeps the former whole-file JSON format and is used to import existing data.
+ * Implementations are selected by {@link Stores}.
+ * </p>
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public interface Store<K, V> {
+
+    /**
+     * Reads the value of a key.
+     *
+     * @param key The key
+     * @return The value, or null if the key is not in the store
+     * @throws IOException If an I/O error occurs while reading
+     */
+    V get(K key) throws IOException;
+
+    /**
+     * Writes the value of a key, replacing any previous value.
+     * <p>
+     * The write is durable when the method returns.
+     * </p>
+     *
+     * @param key   The key
+     * @param value The value
+     * @throws IOException If an I/O error occurs while writing
+     */
+    void put(K key, V value) throws IOException;
+
+    /**
+     * Removes a key from the store; nothing happens if the key is not in the store.
+     *
+     * @param key The key
+     * @throws IOException If an I/O error occurs while writing
+     */
+    void remove(K key) throws IOException;
+
+    /**
+     * Calls an action for every entry of the store, in key order.
+     *
+     * @param action The action receiving every key and its value
+     * @throws IOException If an I/O error occurs while reading
+     */
+    void forEach(BiConsumer<? super K, ? super V> action) throws IOException;
+
+    /**
+     * Tells whether the store has no entries.
+     *
+     * @return true if the store is empty
+     * @throws IOException If an I/O error occurs while reading
+     */
+    boolean isEmpty() throws IOException;
+
+    /**
+     * Removes every entry of the store.
+     *
+     * @throws IOException If an I/O error occurs while writing
+     */
+    void clear() throws IOException;
+
+    /**
+     * Writes several entries.
+     *
+     * @param entries The entries to write
+     * @throws IOException If an I/O error occurs while writing
+     */
+    default void putAll(Map<? extends K, ? extends V> entries) throws IOException {
+        for (Map.Entry<? extends K, ? extends V> entry : entries.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Reads every entry of the store into a new map.
+     *
+     * @return A mutable map of all the entries, in key order
+     * @throws IOException If an I/O error occurs while reading
+     */
+    default Map<K, V> toMap() throws IOException {
+        Map<K, V> entries = new LinkedHashMap<>();
+        forEach(entries::put);
+        return entries;
+    }
+}
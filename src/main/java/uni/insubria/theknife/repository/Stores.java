@@ -0,0 +1,111 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Factory of the {@link Store}s used by the repositories.
+ * <p>
+ * By default every store is a {@link LogStructuredStore} in its own directory under
+ * {@code data/}, with the values encoded as JSON. The first time such a store is opened,
+ * the entries of the former JSON file of the repository, and of its mutation log, are
+ * imported into it; the files themselves are left untouched. A completed import is
+ * recorded by an {@value #IMPORTED} file in the directory of the store, so that a store
+ * emptied later is not filled again from the former files. Setting the system property {@value #BACKEND_PROPERTY}
+ * to {@code json} makes the repositories use the JSON files directly, as before.
+ * </p>
+ */
+@Slf4j
+public class Stores {
+    /**
+     * Default constructor for the Stores class.
+     * <p>
+     * This constructor is not meant to be used directly as this class only provides
+     * static methods. The class is not designed to be instantiated.
+     * </p>
+     */
+    public Stores() {
+        // Default constructor - not meant to be used
+    }
+
+    /**
+     * System property selecting the store implementation: {@code lsm} (default) or {@code json}.
+     */
+    public static final String BACKEND_PROPERTY = "theknife.store";
+
+    /**
+     * Directory containing the data of the application.
+     */
+    private static final String DATA_DIR = "data";
+
+    /**
+     * Name of the file marking a store whose former data has been imported.
+     */
+    private static final String IMPORTED = "IMPORTED";
+
+    /**
+     * Opens the store of a repository.
+     *
+     * @param name         The name of the store, used as the name of its directory
+     * @param legacyJson   The path of the JSON file the data was stored in before
+     * @param objectMapper The mapper used to encode the values as JSON
+     * @param type         The class of the values
+     * @param legacyLog    Callback applying the changes not yet written to the JSON file
+     *                     (e.g. a mutation log) to its entries before the import, or null;
+     *                     called with no entries if the JSON file does not exist
+     * @param <V>          The type of the values
+     * @return The store
+     * @throws IOException If the store cannot be opened or the import fails
+     */
+    public static <V> Store<String, V> open(String name, String legacyJson, ObjectMapper objectMapper, Class<V> type,
+                                            Consumer<Map<String, V>> legacyLog) throws IOException {
+        JsonFileStore<V> legacy = new JsonFileStore<>(legacyJson, objectMapper, type);
+        if ("json".equalsIgnoreCase(System.getProperty(BACKEND_PROPERTY))) {
+            return legacy;
+        }
+
+        ObjectReader reader = objectMapper.readerFor(type);
+        ObjectWriter writer = objectMapper.writerFor(type);
+        Path directory = Path.of(DATA_DIR, name);
+        LogStructuredStore<V> store = new LogStructuredStore<>(directory, new LogStructuredStore.Codec<>() {
+            @Override
+            public byte[] encode(V value) throws IOException {
+                return writer.writeValueAsBytes(value);
+            }
+
+            @Override
+            public V decode(byte[] bytes) throws IOException {
+                return reader.readValue(bytes);
+            }
+        });
+
+        Path marker = directory.resolve(IMPORTED);
+        if (!Files.exists(marker)) {
+            // An import interrupted before the marker is simply written again
+            Map<String, V> entries = legacy.exists() ? legacy.toMap() : new TreeMap<>();
+            if (legacyLog != null) legacyLog.accept(entries);
+            if (!entries.isEmpty()) {
+                store.putAll(entries);
+                store.flush();
+                log.info("Imported {} entries of {} into the {} store", entries.size(), legacyJson, name);
+            }
+            Files.writeString(marker, legacyJson + System.lineSeparator());
+        }
+        return store;
+    }
+}
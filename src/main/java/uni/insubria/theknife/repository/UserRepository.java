@@ -6,12 +6,10 @@ Morosini Luca 760029 VA
 */
 package uni.insubria.theknife.repository;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
 
 import uni.insubria.theknife.model.Restaurant;
 import uni.insubria.theknife.model.User;
@@ -20,14 +18,26 @@ import uni.insubria.theknife.model.User;
  * Repository for managing user data in the TheKnife application.
  * <p>
  * This class provides methods to interact with the repository of User objects,
- * including loading users from JSON files, and performing operations such as
+ * including loading users from their {@link Store}, and performing operations such as
  * adding users and retrieving user information.
  * </p>
  * <p>
+ * Logins and registrations only read the record of the given username, which the store
+ * finds through its in-memory index, so their cost does not depend on the number of users.
+ * </p>
+ * <p>
+ * The favorite and owned restaurants of a user are stored as their IDs, and read back as
+ * references holding only the ID: reading a user never waits for the restaurant catalogue,
+ * and the views showing the restaurants resolve them once it is loaded. A reverse index from every restaurant to
+ * the users referencing it, built on first use, lets a deleted restaurant be removed from
+ * those users without reading the others.
+ * </p>
+ * <p>
  * The repository handles data persistence and serves as the data access layer
  * for user-related operations in the application.
  * </p>
  */
+@Slf4j
 public class UserRepository {
     /**
      * Default constructor for the UserRepository class.
@@ -46,10 +56,20 @@ public class UserRepository {
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
-     * Path to the JSON file used for storing and retrieving user data.
+     * Path to the JSON file the users were stored in before the {@link Store}, imported on first use.
      */
     private static final String USERS_JSON = "data/users.json";
 
+    /**
+     * The store of the users, or null if not opened yet.
+     */
+    private static Store<String, User> store = null;
+
+    /**
+     * The usernames of the users referencing every restaurant, by restaurant ID, or null if not built yet.
+     */
+    private static Map<String, Set<String>> usersByRestaurant = null;
+
     /**
      * Enumeration of possible error codes returned by repository operations.
      */
@@ -71,45 +91,82 @@ public class UserRepository {
     }
 
     /**
-     * Loads all users from the JSON file.
+     * Returns the store of the users, opening it if needed.
      * <p>
-     * If an error occurs during loading, returns an empty map.
+     * The first time the store is opened, the users of the former JSON file are imported into it.
+     * </p>
+     *
+     * @return The store
+     * @throws IOException If the store cannot be opened
+     */
+    private static synchronized Store<String, User> store() throws IOException {
+        if (store == null) {
+            store = Stores.open("users", USERS_JSON, objectMapper, User.class, null);
+        }
+        return store;
+    }
+
+    /**
+     * Opens the store of the users, importing the former JSON file if needed.
+     * <p>
+     * Called at startup, so that the first login does not pay for opening the store.
+     * </p>
+     */
+    public static void openStore() {
+        try {
+            store();
+        } catch (IOException e) {
+            log.warn("Invalid users store", e);
+        }
+    }
+
+    /**
+     * Loads all users from the store.
+     * <p>
+     * The restaurants of the returned users are not resolved: they only hold their ID.
+     * If the store cannot be read, returns an empty map.
      * </p>
      *
      * @return A map containing usernames as keys and corresponding User objects as values
      */
     public static Map<String, User> loadUsers() {
-        File file = new File(USERS_JSON);
-        try (FileInputStream fis = new FileInputStream(file)) {
-            Map<String, User> users = objectMapper.readValue(fis, Map.class);
-            users.keySet().forEach(key -> users.put(key,objectMapper.convertValue(users.get(key), User.class)));
-            return users;
+        try {
+            return new HashMap<>(store().toMap());
         } catch (Exception e) {
-            System.out.println("Invalid users file.");
+            log.warn("Invalid users store", e);
             return new HashMap<>();
         }
     }
 
     /**
-     * Saves the provided map of users to a JSON file.
+     * Saves the provided map of users to the store.
      *
      * @param users A map containing usernames as keys and corresponding User objects as values
-     * @throws IOException If an I/O error occurs during file writing
+     * @throws IOException If an I/O error occurs during writing
      */
-    public static void saveUsers(Map<String, User> users) throws IOException {
-        FileWriter fileWriter = new FileWriter(USERS_JSON, false); // true to append
-        fileWriter.write(objectMapper.writeValueAsString(users));
-        fileWriter.close();
+    public static synchronized void saveUsers(Map<String, User> users) throws IOException {
+        Map<String, User> previous = new HashMap<>();
+        for (String username : users.keySet()) previous.put(username, store().get(username));
+        store().putAll(users);
+        for (Map.Entry<String, User> entry : users.entrySet()) {
+            reindex(entry.getKey(), previous.get(entry.getKey()), entry.getValue());
+        }
     }
 
     /**
      * Retrieves a user by their username.
      *
      * @param username The username of the user to retrieve
-     * @return The User object with the specified username, or null if not found
+     * @return The User object with the specified username, whose restaurants only hold their ID,
+     *         or null if not found or if the store cannot be read
      */
     public static User getUser(String username) {
-        return loadUsers().get(username);
+        try {
+            return store().get(username);
+        } catch (IOException e) {
+            log.warn("Invalid users store", e);
+            return null;
+        }
     }
 
     /**
@@ -121,12 +178,11 @@ public class UserRepository {
      *         - SERVICE_ERROR if an error occurs during saving
      *         - NONE if the user is successfully added
      */
-    public static ERROR_CODE addUser(User user) {
-        Map<String, User> users = loadUsers();
-        if (users.containsKey(user.getUsername())) return ERROR_CODE.DUPLICATED;
-        users.put(user.getUsername(), user);
+    public static synchronized ERROR_CODE addUser(User user) {
         try {
-            saveUsers(users);
+            if (store().get(user.getUsername()) != null) return ERROR_CODE.DUPLICATED;
+            store().put(user.getUsername(), user);
+            reindex(user.getUsername(), null, user);
         } catch (IOException e) {
             return ERROR_CODE.SERVICE_ERROR;
         }
@@ -145,31 +201,130 @@ public class UserRepository {
      * - SERVICE_ERROR if an error occurs during saving the repository
      * - NONE if the restaurant is successfully added
      */
-    public static ERROR_CODE toggleFavoriteRestaurant(User user, Restaurant restaurant) {
-
-        HashSet<Restaurant> favorites = user.getRestaurants();
-
-        if (favorites.contains(restaurant))
-            favorites.remove(restaurant);
-        else
-            favorites.add(restaurant);
-
-        // Replaces old user with the new one with updated favorites
-        Map<String, User> users = loadUsers();
-        users.put(user.getUsername(), user);
+    public static synchronized ERROR_CODE toggleFavoriteRestaurant(User user, Restaurant restaurant) {
+        Restaurant reference = new Restaurant().setId(restaurant.getId());
+        boolean added;
 
+        // The stored record is changed rather than the session user, so that the references
+        // the session does not hold, e.g. of restaurants it could not show, are written back
         try {
-            UserRepository.saveUsers(users);
+            User stored = store().get(user.getUsername());
+            if (stored == null) stored = user;
+            if (stored.getRestaurants() == null) stored.setRestaurants(new HashSet<>());
+            added = !stored.getRestaurants().remove(reference);
+            if (added) stored.getRestaurants().add(reference);
+            store().put(user.getUsername(), stored);
         } catch (IOException e) {
             return ERROR_CODE.SERVICE_ERROR;
         }
 
+        // Keeps the session consistent with the store
+        if (added) user.getRestaurants().add(restaurant);
+        else user.getRestaurants().remove(restaurant);
+
+        if (usersByRestaurant != null) {
+            if (added) usersByRestaurant.computeIfAbsent(restaurant.getId(), k -> new HashSet<>()).add(user.getUsername());
+            else unindex(restaurant.getId(), user.getUsername());
+        }
         return ERROR_CODE.NONE;
 
     }
 
+    /**
+     * Returns the usernames of the users having a restaurant among their favorite or owned restaurants.
+     *
+     * @param restaurantId The restaurant ID
+     * @return A read-only set of usernames, empty if no user references the restaurant
+     * @throws IOException If the store cannot be read while building the reverse index
+     */
+    public static synchronized Set<String> getUsernamesByRestaurant(String restaurantId) throws IOException {
+        Set<String> usernames = usersByRestaurant().get(restaurantId);
+        return usernames == null ? Set.of() : Collections.unmodifiableSet(new HashSet<>(usernames));
+    }
+
+    /**
+     * Returns the IDs of all the restaurants referenced by at least one user.
+     *
+     * @return A new set of restaurant IDs
+     * @throws IOException If the store cannot be read while building the reverse index
+     */
+    public static synchronized Set<String> getReferencedRestaurantIds() throws IOException {
+        return new HashSet<>(usersByRestaurant().keySet());
+    }
+
+    /**
+     * Removes a restaurant from the favorite and owned restaurants of every user, e.g. after its deletion.
+     * <p>
+     * Only the users referencing the restaurant are read and written.
+     * </p>
+     *
+     * @param restaurantId The restaurant ID
+     * @throws IOException If an I/O error occurs while updating the users
+     */
+    public static synchronized void removeRestaurantReferences(String restaurantId) throws IOException {
+        Set<String> usernames = usersByRestaurant().remove(restaurantId);
+        if (usernames == null) return;
+        for (String username : usernames) {
+            User user = store().get(username);
+            if (user == null || !user.getRestaurants().remove(new Restaurant().setId(restaurantId))) continue;
+            store().put(username, user);
+        }
+    }
+
 
 
     //#endregion
 
+    /**
+     * Returns the reverse index from the restaurants to the users referencing them, building it if needed.
+     *
+     * @return The usernames by restaurant ID
+     * @throws IOException If the store cannot be read
+     */
+    private static Map<String, Set<String>> usersByRestaurant() throws IOException {
+        if (usersByRestaurant == null) {
+            Map<String, Set<String>> index = new HashMap<>();
+            store().forEach((username, user) -> {
+                if (user.getRestaurants() == null) return;
+                for (Restaurant restaurant : user.getRestaurants()) {
+                    if (restaurant != null) index.computeIfAbsent(restaurant.getId(), k -> new HashSet<>()).add(username);
+                }
+            });
+            usersByRestaurant = index;
+        }
+        return usersByRestaurant;
+    }
+
+    /**
+     * Updates the reverse index after a user has been written, if the index is built.
+     *
+     * @param username The username
+     * @param previous The user before the write, or null if new
+     * @param current  The user written
+     */
+    private static void reindex(String username, User previous, User current) {
+        if (usersByRestaurant == null) return;
+        if (previous != null && previous.getRestaurants() != null) {
+            for (Restaurant restaurant : previous.getRestaurants()) {
+                if (restaurant != null) unindex(restaurant.getId(), username);
+            }
+        }
+        if (current.getRestaurants() != null) {
+            for (Restaurant restaurant : current.getRestaurants()) {
+                if (restaurant != null) usersByRestaurant.computeIfAbsent(restaurant.getId(), k -> new HashSet<>()).add(username);
+            }
+        }
+    }
+
+    /**
+     * Removes a user from the entry of a restaurant in the reverse index.
+     *
+     * @param restaurantId The restaurant ID
+     * @param username     The username
+     */
+    private static void unindex(String restaurantId, String username) {
+        Set<String> usernames = usersByRestaurant.get(restaurantId);
+        if (usernames != null && usernames.remove(username) && usernames.isEmpty()) usersByRestaurant.remove(restaurantId);
+    }
+
 }
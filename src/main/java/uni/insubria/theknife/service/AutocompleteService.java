@@ -0,0 +1,114 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.service;
+
+import javafx.scene.control.TextField;
+import org.controlsfx.control.textfield.TextFields;
+import uni.insubria.theknife.repository.RestaurantIndex;
+import uni.insubria.theknife.util.AutocompleteIndex;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Service providing the suggestions of the cuisine and location fields.
+ * <p>
+ * Suggestions come from an {@link AutocompleteIndex} per attribute, weighted by the
+ * number of restaurants having each value. The indexes are built the first time they
+ * are needed and rebuilt once the restaurant index has changed.
+ * </p>
+ */
+public class AutocompleteService {
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private AutocompleteService() {
+        // This constructor is not meant to be called
+    }
+
+    /**
+     * Maximum number of suggestions shown below a field.
+     */
+    public static final int MAX_SUGGESTIONS = 10;
+
+    /**
+     * The current cuisine suggestions, if built.
+     */
+    private static Completions cuisines = null;
+
+    /**
+     * The current location suggestions, if built.
+     */
+    private static Completions locations = null;
+
+    /**
+     * An autocomplete index, together with the state of the restaurant index it was built from.
+     *
+     * @param source  The restaurant index the counts were taken from
+     * @param version The version of the restaurant index at that time
+     * @param index   The autocomplete index
+     */
+    private record Completions(RestaurantIndex source, long version, AutocompleteIndex index) {
+    }
+
+    /**
+     * Binds the cuisine suggestions to a text field.
+     *
+     * @param field The text field
+     */
+    public static void bindCuisines(TextField field) {
+        TextFields.bindAutoCompletion(field, request -> suggestCuisines(request.getUserText()));
+    }
+
+    /**
+     * Binds the location suggestions to a text field.
+     *
+     * @param field The text field
+     */
+    public static void bindLocations(TextField field) {
+        TextFields.bindAutoCompletion(field, request -> suggestLocations(request.getUserText()));
+    }
+
+    /**
+     * Returns the cuisines suggested for a typed text.
+     *
+     * @param text The text typed by the user
+     * @return Up to {@link #MAX_SUGGESTIONS} cuisines, best first
+     */
+    public static synchronized List<String> suggestCuisines(String text) {
+        cuisines = refresh(cuisines, RestaurantIndex::countByCuisine);
+        return cuisines.index().suggest(text, MAX_SUGGESTIONS);
+    }
+
+    /**
+     * Returns the locations suggested for a typed text.
+     *
+     * @param text The text typed by the user
+     * @return Up to {@link #MAX_SUGGESTIONS} locations, best first
+     */
+    public static synchronized List<String> suggestLocations(String text) {
+        locations = refresh(locations, RestaurantIndex::countByLocation);
+        return locations.index().suggest(text, MAX_SUGGESTIONS);
+    }
+
+    /**
+     * Rebuilds an autocomplete index if the restaurants have changed since it was built.
+     *
+     * @param cached The current index, or null
+     * @param counts The function counting the restaurants by value
+     * @return An up to date index
+     */
+    private static Completions refresh(Completions cached, Function<RestaurantIndex, Map<String, Integer>> counts) {
+        RestaurantIndex source = CatalogService.getRestaurantIndex();
+        long version = source.version();
+        if (cached != null && cached.source() == source && cached.version() == version) {
+            return cached;
+        }
+        return new Completions(source, version, new AutocompleteIndex(counts.apply(source)));
+    }
+}
@@ -0,0 +1,263 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.service;
+
+import uni.insubria.theknife.model.Restaurant;
+import uni.insubria.theknife.repository.NameSearchIndex;
+import uni.insubria.theknife.repository.RestaurantIndex;
+import uni.insubria.theknife.repository.RestaurantOrdinals;
+import uni.insubria.theknife.repository.RestaurantRepository;
+import uni.insubria.theknife.repository.SpatialIndex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service owning the in-memory restaurant catalogue.
+ * <p>
+ * The catalogue is loaded from the repository once, the first time it is needed, and is
+ * the only copy of the restaurants in the application. Every view derived from it (the
+ * filter index, the name search index, the spatial index and the lists of locations and
+ * cuisines) is built on first use and then updated incrementally by {@link #added(Restaurant)},
+ * {@link #updated(Restaurant)} and {@link #removed(Restaurant)}, which the repository calls
+ * after persisting a change. Restaurants are looked up, replaced and removed by ID in
+ * constant time.
+ * </p>
+ * <p>
+ * The indexes address the restaurants by the dense ordinals of a single
+ * {@link RestaurantOrdinals} table owned by the service. An ordinal is released only after
+ * every view has dropped its restaurant, and is then reused for the next one added.
+ * </p>
+ */
+public class CatalogService {
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private CatalogService() {
+        // This constructor is not meant to be called
+    }
+
+    /**
+     * The restaurants of the catalogue, or null if not loaded yet.
+     */
+    private static List<Restaurant> restaurants = null;
+
+    /**
+     * Position of every restaurant in {@link #restaurants}, keyed by ID.
+     */
+    private static final Map<String, Integer> positions = new HashMap<>();
+
+    /**
+     * Read-only view of {@link #restaurants} handed out to callers.
+     */
+    private static List<Restaurant> view = null;
+
+    /**
+     * Ordinals of the restaurants, shared by the views of the catalogue.
+     */
+    private static final RestaurantOrdinals ordinals = new RestaurantOrdinals();
+
+    /**
+     * Inverted index of the catalogue, built on first use.
+     */
+    private static RestaurantIndex restaurantIndex = null;
+
+    /**
+     * Name search index of the catalogue, built on first use.
+     */
+    private static NameSearchIndex nameSearchIndex = null;
+
+    /**
+     * Spatial index of the catalogue, built on first use.
+     */
+    private static SpatialIndex spatialIndex = null;
+
+    /**
+     * The locations of the catalogue, with the version of the index they were read at.
+     */
+    private static Facet locations = null;
+
+    /**
+     * The cuisines of the catalogue, with the version of the index they were read at.
+     */
+    private static Facet cuisines = null;
+
+    /**
+     * The sorted values of an attribute, together with the state of the index they were read from.
+     *
+     * @param source  The restaurant index the values were read from
+     * @param version The version of the restaurant index at that time
+     * @param values  The sorted values
+     */
+    private record Facet(RestaurantIndex source, long version, List<String> values) {
+    }
+
+    /**
+     * Returns the restaurants of the catalogue, loading them if needed.
+     *
+     * @return A read-only list of all the restaurants
+     */
+    public static synchronized List<Restaurant> getRestaurants() {
+        if (restaurants == null) {
+            restaurants = new ArrayList<>(RestaurantRepository.loadRestaurants().values());
+            positions.clear();
+            for (int i = 0; i < restaurants.size(); i++) positions.put(restaurants.get(i).getId(), i);
+            view = Collections.unmodifiableList(restaurants);
+        }
+        return view;
+    }
+
+    /**
+     * Returns a restaurant of the catalogue by ID, loading the catalogue if needed.
+     *
+     * @param id The restaurant ID
+     * @return The restaurant, or null if the catalogue has no restaurant with that ID
+     */
+    public static synchronized Restaurant get(String id) {
+        getRestaurants();
+        Integer position = positions.get(id);
+        return position == null ? null : restaurants.get(position);
+    }
+
+    /**
+     * Retrieves the inverted index of the catalogue, building it if needed.
+     *
+     * @return The index of the restaurants returned by {@link #getRestaurants()}
+     */
+    public static synchronized RestaurantIndex getRestaurantIndex() {
+        if (restaurantIndex == null) {
+            restaurantIndex = new RestaurantIndex(ordinals, getRestaurants());
+        }
+        return restaurantIndex;
+    }
+
+    /**
+     * Retrieves the name search index of the catalogue, building it if needed.
+     *
+     * @return The name search index of the restaurants returned by {@link #getRestaurants()}
+     */
+    public static synchronized NameSearchIndex getNameSearchIndex() {
+        if (nameSearchIndex == null) {
+            nameSearchIndex = new NameSearchIndex(ordinals, getRestaurants());
+        }
+        return nameSearchIndex;
+    }
+
+    /**
+     * Retrieves the spatial index of the catalogue, building it if needed.
+     *
+     * @return The spatial index of the restaurants returned by {@link #getRestaurants()}
+     */
+    public static synchronized SpatialIndex getSpatialIndex() {
+        if (spatialIndex == null) {
+            spatialIndex = new SpatialIndex(ordinals, getRestaurants());
+        }
+        return spatialIndex;
+    }
+
+    /**
+     * Returns the locations of the restaurants in the catalogue.
+     * <p>
+     * Locations differing only in case are listed once.
+     * </p>
+     *
+     * @return The sorted list of distinct locations
+     */
+    public static synchronized List<String> getLocations() {
+        RestaurantIndex index = getRestaurantIndex();
+        if (locations == null || locations.source() != index || locations.version() != index.version()) {
+            locations = new Facet(index, index.version(), sorted(index.countByLocation().keySet()));
+        }
+        return locations.values();
+    }
+
+    /**
+     * Returns the cuisines of the restaurants in the catalogue.
+     * <p>
+     * Cuisines differing only in case are listed once.
+     * </p>
+     *
+     * @return The sorted list of distinct cuisines
+     */
+    public static synchronized List<String> getCuisines() {
+        RestaurantIndex index = getRestaurantIndex();
+        if (cuisines == null || cuisines.source() != index || cuisines.version() != index.version()) {
+            cuisines = new Facet(index, index.version(), sorted(index.countByCuisine().keySet()));
+        }
+        return cuisines.values();
+    }
+
+    /**
+     * Adds a new restaurant to the catalogue and to the views built so far.
+     *
+     * @param restaurant The restaurant, already persisted
+     */
+    public static synchronized void added(Restaurant restaurant) {
+        if (restaurants == null) return;
+        positions.put(restaurant.getId(), restaurants.size());
+        restaurants.add(restaurant);
+        if (restaurantIndex != null) restaurantIndex.add(restaurant);
+        if (nameSearchIndex != null) nameSearchIndex.add(restaurant);
+        if (spatialIndex != null) spatialIndex.add(restaurant);
+    }
+
+    /**
+     * Replaces a restaurant of the catalogue with its edited version, updating the views built so far.
+     *
+     * @param restaurant The edited restaurant, already persisted
+     */
+    public static synchronized void updated(Restaurant restaurant) {
+        if (restaurants == null) return;
+        Integer position = positions.get(restaurant.getId());
+        if (position != null) restaurants.set(position, restaurant);
+        if (restaurantIndex != null) restaurantIndex.update(restaurant);
+        if (nameSearchIndex != null) nameSearchIndex.update(restaurant);
+        if (spatialIndex != null) spatialIndex.update(restaurant);
+    }
+
+    /**
+     * Removes a restaurant from the catalogue and from the views built so far.
+     * <p>
+     * The last restaurant of the list takes the place of the removed one, so the
+     * removal does not shift the rest of the list.
+     * </p>
+     *
+     * @param restaurant The restaurant, already deleted from the repository
+     */
+    public static synchronized void removed(Restaurant restaurant) {
+        if (restaurants == null) return;
+        Integer position = positions.remove(restaurant.getId());
+        if (position != null) {
+            Restaurant last = restaurants.remove(restaurants.size() - 1);
+            if (position < restaurants.size()) {
+                restaurants.set(position, last);
+                positions.put(last.getId(), position);
+            }
+        }
+        if (restaurantIndex != null) restaurantIndex.remove(restaurant);
+        if (nameSearchIndex != null) nameSearchIndex.remove(restaurant);
+        if (spatialIndex != null) spatialIndex.remove(restaurant);
+        // Only now no view refers to the ordinal any more, and it can be given to a new restaurant
+        ordinals.release(restaurant.getId());
+    }
+
+    /**
+     * Sorts a set of values alphabetically, ignoring case.
+     *
+     * @param values The values
+     * @return A new read-only sorted list
+     */
+    private static List<String> sorted(Collection<String> values) {
+        List<String> sorted = new ArrayList<>(values);
+        sorted.sort(String.CASE_INSENSITIVE_ORDER);
+        return Collections.unmodifiableList(sorted);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.service;
+
+import javafx.application.Platform;
+import lombok.extern.slf4j.Slf4j;
+import uni.insubria.theknife.util.LatencyMetric;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Service running the restaurant searches off the JavaFX application thread.
+ * <p>
+ * Queries are debounced, so that fast typing only triggers the query for the last
+ * keystroke, and then run on a virtual thread. Submitting a new query cancels any
+ * pending or in-flight one, and only the result of the latest query is published back
+ * to the JavaFX application thread through {@link Platform#runLater(Runnable)}.
+ * </p>
+ * <p>
+ * The time from the user input to the rendering of the result is tracked by
+ * {@link #INPUT_TO_RENDER}. It is recorded by the caller, once the view showing the
+ * result has been laid out, since only the caller knows when that happens.
+ * </p>
+ */
+@Slf4j
+public class SearchService {
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private SearchService() {
+        // This constructor is not meant to be called
+    }
+
+    /**
+     * Delay after the last keystroke before a search query is run.
+     */
+    public static final long DEBOUNCE_MILLIS = 150;
+
+    /**
+     * Latency from the user input to the rendering of the corresponding result.
+     */
+    public static final LatencyMetric INPUT_TO_RENDER = new LatencyMetric("search input-to-render");
+
+    /**
+     * Scheduler delaying the debounced queries.
+     */
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("search-debounce").daemon().factory());
+
+    /**
+     * Executor running every query on its own virtual thread.
+     */
+    private static final ExecutorService workers = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("search-", 0).factory());
+
+    /**
+     * Number of the latest submitted query; results of older queries are discarded.
+     */
+    private static final AtomicLong latest = new AtomicLong();
+
+    /**
+     * The debounced query waiting to be run, if any.
+     */
+    private static ScheduledFuture<?> pending = null;
+
+    /**
+     * The query currently running, if any.
+     */
+    private static Future<?> running = null;
+
+    /**
+     * Submits a query after the debounce delay, cancelling any previous query.
+     *
+     * @param query   The query to run in background
+     * @param publish The action rendering the result, run on the JavaFX application thread
+     * @param <T>     The type of the result
+     */
+    public static <T> void submit(Supplier<T> query, Consumer<T> publish) {
+        schedule(query, publish, DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Submits a query to be run immediately, cancelling any previous query.
+     *
+     * @param query   The query to run in background
+     * @param publish The action rendering the result, run on the JavaFX application thread
+     * @param <T>     The type of the result
+     */
+    public static <T> void submitNow(Supplier<T> query, Consumer<T> publish) {
+        schedule(query, publish, 0);
+    }
+
+    /**
+     * Cancels any pending or in-flight query, so that its result is never published.
+     * <p>
+     * To be called before replacing the displayed results synchronously.
+     * </p>
+     */
+    public static synchronized void cancel() {
+        latest.incrementAndGet();
+        if (pending != null) pending.cancel(false);
+        if (running != null) running.cancel(true);
+    }
+
+    /**
+     * Cancels the previous query and schedules a new one.
+     *
+     * @param query       The query to run in background
+     * @param publish     The action rendering the result
+     * @param delayMillis The delay before running the query
+     * @param <T>         The type of the result
+     */
+    private static synchronized <T> void schedule(Supplier<T> query, Consumer<T> publish, long delayMillis) {
+        cancel();
+        long id = latest.get();
+        pending = scheduler.schedule(() -> run(id, query, publish), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a query on a virtual thread, unless a newer query has been submitted meanwhile.
+     *
+     * @param id      The number of the query
+     * @param query   The query to run
+     * @param publish The action rendering the result
+     * @param <T>     The type of the result
+     */
+    private static synchronized <T> void run(long id, Supplier<T> query, Consumer<T> publish) {
+        if (id != latest.get()) return;
+        running = workers.submit(() -> {
+            try {
+                T result = query.get();
+                if (id != latest.get() || Thread.currentThread().isInterrupted()) return;
+                Platform.runLater(() -> {
+                    // A newer query may have been submitted while waiting for the FX thread
+                    if (id != latest.get()) return;
+                    publish.accept(result);
+                });
+            } catch (RuntimeException e) {
+                log.error("Error running search query", e);
+            }
+        });
+    }
+}
@@ -9,19 +9,14 @@ package uni.insubria.theknife.service;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
-import lombok.Getter;
 import uni.insubria.theknife.model.Restaurant;
 import uni.insubria.theknife.model.User;
-import uni.insubria.theknife.repository.RestaurantRepository;
 import uni.insubria.theknife.model.FilterOptions;
 
 import java.awt.*;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 /**
  * Service for managing application session state in the TheKnife application.
@@ -31,8 +26,7 @@ import java.util.stream.Collectors;
  * point for managing application state and navigation between different views.
  * </p>
  * <p>
- * The service also provides access to application-wide data such as the list of
- * restaurants and available locations.
+ * The restaurant catalogue itself is owned by the {@link CatalogService}.
  * </p>
  */
 public class SessionService {
@@ -74,25 +68,9 @@ public class SessionService {
     private static final String FILTERS_KEY = "filters";
 
     /**
-     * List of all restaurants available in the application.
-     * This is loaded once when the class is initialized.
+     * Key for storing the compiled current filters in the session.
      */
-    @Getter
-    private static final List<Restaurant> restaurants = RestaurantRepository.loadRestaurants().values().stream().toList();
-
-    /**
-     * List of all unique locations where restaurants are available.
-     * This is derived from the restaurant list and sorted alphabetically.
-     */
-    @Getter
-    private static final List<String> locations = restaurants.stream().map(Restaurant::getLocation).collect(Collectors.toSet()).stream().sorted().toList();
-
-    /**
-     * List of all unique cuisines where restaurants are available.
-     * This is derived from the restaurant list and sorted alphabetically.
-     */
-    @Getter
-    private static final List<String> cuisines = restaurants.stream().map(Restaurant::getCuisine).collect(Collectors.toSet()).stream().sorted().toList();
+    private static final String COMPILED_FILTERS_KEY = "compiledFilters";
 
     //TODO
     //GITHUB TASK #5 add list of cousine, price, facilities, awars, greenstar
@@ -202,32 +180,25 @@ public class SessionService {
 
     public static void setFilters(FilterOptions filters) {
         session.put(FILTERS_KEY, filters);
+        session.put(COMPILED_FILTERS_KEY, filters != null ? filters.compile() : null);
     }
 
     public static FilterOptions getFilters() {
         return (FilterOptions) session.get(FILTERS_KEY);
     }
 
-    //#endregion
-
-
-    //#region CachedRestaurants
-    private static List<Restaurant> cachedRestaurants = null;
-
-    public static List<Restaurant> getRestaurants() {
-        // Se non hai una cache, caricala dal file
-        if (cachedRestaurants == null) {
-            cachedRestaurants = new ArrayList<>(RestaurantRepository.loadRestaurants().values());
-        }
-        return cachedRestaurants;
-    }
-
-    public static void setRestaurants(List<Restaurant> restaurants) {
-        cachedRestaurants = restaurants;
+    /**
+     * Retrieves the predicate compiled from the current filters.
+     * <p>
+     * The filters are compiled once in {@link #setFilters(FilterOptions)}, so they must
+     * be set again after being modified.
+     * </p>
+     *
+     * @return The compiled filters, or null if no filters are set
+     */
+    public static FilterOptions.Compiled getCompiledFilters() {
+        return (FilterOptions.Compiled) session.get(COMPILED_FILTERS_KEY);
     }
 
-    public static void clearRestaurants() {
-        cachedRestaurants = null;
-    }
     //#endregion
 }
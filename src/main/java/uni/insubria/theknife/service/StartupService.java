@@ -0,0 +1,110 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.service;
+
+import javafx.application.Platform;
+import lombok.extern.slf4j.Slf4j;
+import uni.insubria.theknife.repository.ReviewsRepository;
+import uni.insubria.theknife.repository.UserRepository;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Service loading the application data in background at startup.
+ * <p>
+ * {@link #start()} is called as soon as the application is launched, before the first
+ * window is shown: users, reviews and restaurants are then loaded in parallel while
+ * the login screen is already usable. Logging in only reads the users, so it never
+ * waits for the restaurant catalogue.
+ * </p>
+ * <p>
+ * Controllers needing the catalogue register a callback with {@link #whenCatalogReady(Runnable)},
+ * which is run on the JavaFX application thread once the catalogue and its indexes are built.
+ * </p>
+ */
+@Slf4j
+public class StartupService {
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private StartupService() {
+        // This constructor is not meant to be called
+    }
+
+    /**
+     * Executor running every loading task on its own virtual thread.
+     */
+    private static final ExecutorService loaders = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("startup-", 0).factory());
+
+    /**
+     * Completion of the loading of the restaurant catalogue, or null if not started.
+     */
+    private static CompletableFuture<Void> catalog = null;
+
+    /**
+     * Starts loading the application data in background, if not started yet.
+     * <p>
+     * The restaurants are read while the reviews are loaded, and the reviews are
+     * attached to them as soon as both are available. The store of the users is only
+     * opened, so that the first login does not pay for it: users are read one at a time
+     * when they log in.
+     * </p>
+     */
+    public static synchronized void start() {
+        if (catalog != null) return;
+        long startNanos = System.nanoTime();
+
+        CompletableFuture.runAsync(UserRepository::openStore, loaders)
+                .exceptionally(e -> {
+                    log.error("Error opening the users store at startup", e);
+                    return null;
+                });
+        CompletableFuture.runAsync(ReviewsRepository::loadReviews, loaders)
+                .exceptionally(e -> {
+                    log.error("Error loading reviews at startup", e);
+                    return null;
+                });
+        catalog = CompletableFuture.runAsync(CatalogService::getRestaurantIndex, loaders);
+        catalog.whenComplete((result, e) -> {
+            if (e != null) {
+                log.error("Error loading restaurants at startup", e);
+            } else {
+                log.info("Restaurant catalogue ready in {} ms", (System.nanoTime() - startNanos) / 1_000_000);
+            }
+        });
+    }
+
+    /**
+     * Returns whether the restaurant catalogue has been loaded.
+     *
+     * @return true if the catalogue is ready to be used without waiting
+     */
+    public static synchronized boolean isCatalogReady() {
+        return catalog != null && catalog.isDone() && !catalog.isCompletedExceptionally();
+    }
+
+    /**
+     * Runs an action on the JavaFX application thread once the restaurant catalogue is loaded.
+     * <p>
+     * If the catalogue is already loaded, the action is run right after the current event.
+     * If loading fails, the action is never run.
+     * </p>
+     *
+     * @param action The action to run
+     */
+    public static void whenCatalogReady(Runnable action) {
+        CompletableFuture<Void> ready;
+        synchronized (StartupService.class) {
+            start();
+            ready = catalog;
+        }
+        ready.thenRun(() -> Platform.runLater(action));
+    }
+}
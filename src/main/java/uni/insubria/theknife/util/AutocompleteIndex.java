@@ -0,0 +1,144 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.util;
+
+import uni.insubria.theknife.repository.NameSearchIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the suggestions of an autocomplete field.
+ * <p>
+ * Values are normalised once (lower case, accents removed) and kept in a sorted array,
+ * so that the values starting with the typed text are found with a binary search.
+ * Each value has a weight, e.g. the number of restaurants having it.
+ * </p>
+ * <p>
+ * Suggestions are ranked: values starting with the typed text first, then values
+ * containing it, each group by decreasing weight and then alphabetically.
+ * </p>
+ */
+public class AutocompleteIndex {
+
+    /**
+     * The normalised values, sorted.
+     */
+    private final String[] keys;
+
+    /**
+     * The original values, parallel to {@link #keys}.
+     */
+    private final String[] values;
+
+    /**
+     * The weights of the values, parallel to {@link #keys}.
+     */
+    private final int[] weights;
+
+    /**
+     * Positions in {@link #keys} by decreasing weight.
+     */
+    private final int[] byWeight;
+
+    /**
+     * Builds the index of a set of values.
+     *
+     * @param weightedValues The values with their weight
+     */
+    public AutocompleteIndex(Map<String, Integer> weightedValues) {
+        String[][] entries = weightedValues.keySet().stream()
+                .map(value -> new String[]{NameSearchIndex.normalize(value).trim(), value})
+                .sorted(Comparator.<String[], String>comparing(entry -> entry[0]).thenComparing(entry -> entry[1]))
+                .toArray(String[][]::new);
+
+        keys = new String[entries.length];
+        values = new String[entries.length];
+        weights = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            keys[i] = entries[i][0];
+            values[i] = entries[i][1];
+            weights[i] = weightedValues.get(entries[i][1]);
+        }
+
+        Integer[] order = new Integer[entries.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, byWeightThenKey());
+        byWeight = Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Returns the suggestions for a typed text.
+     *
+     * @param text  The text typed by the user
+     * @param limit The maximum number of suggestions
+     * @return The best suggestions; the heaviest values if the text is blank
+     */
+    public List<String> suggest(String text, int limit) {
+        String query = NameSearchIndex.normalize(text).trim();
+        List<String> suggestions = new ArrayList<>(Math.min(limit, keys.length));
+        if (limit <= 0) return suggestions;
+
+        if (query.isEmpty()) {
+            for (int i = 0; i < byWeight.length && suggestions.size() < limit; i++) {
+                suggestions.add(values[byWeight[i]]);
+            }
+            return suggestions;
+        }
+
+        // Values starting with the query are contiguous in the sorted keys
+        int start = lowerBound(query);
+        int end = start;
+        while (end < keys.length && keys[end].startsWith(query)) end++;
+        Integer[] prefixed = new Integer[end - start];
+        for (int i = 0; i < prefixed.length; i++) prefixed[i] = start + i;
+        Arrays.sort(prefixed, byWeightThenKey());
+        for (int i = 0; i < prefixed.length && suggestions.size() < limit; i++) {
+            suggestions.add(values[prefixed[i]]);
+        }
+
+        // Then values containing the query, heaviest first
+        for (int i = 0; i < byWeight.length && suggestions.size() < limit; i++) {
+            int position = byWeight[i];
+            if (position >= start && position < end) continue;
+            if (keys[position].contains(query)) suggestions.add(values[position]);
+        }
+        return suggestions;
+    }
+
+    /**
+     * Finds the first key not smaller than a text.
+     *
+     * @param text The normalised text
+     * @return The position of the first key greater than or equal to the text
+     */
+    private int lowerBound(String text) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(text) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the comparator of positions by decreasing weight, then by key.
+     *
+     * @return The comparator
+     */
+    private Comparator<Integer> byWeightThenKey() {
+        return Comparator.<Integer>comparingInt(position -> -weights[position]).thenComparingInt(position -> position);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generator of stable IDs derived from the content of an entity.
+ * <p>
+ * The ID is a 64-bit hash of the given parts, written as 16 hexadecimal digits: the same
+ * parts always give the same ID, on every run and every machine, unlike {@link Object#hashCode()}
+ * based IDs, whose 32 bits collide within a catalogue of a few tens of thousands of entries.
+ * The parts are hashed as UTF-8 text (FNV-1a) with a separator between them, so that
+ * ("ab", "c") and ("a", "bc") differ, and the result goes through a final mixing step.
+ * </p>
+ * <p>
+ * A 64-bit hash can still collide, so callers check whether an ID is already used by a
+ * different entity and, if so, ask for the next candidate with {@link #candidate(int, Object...)}.
+ * </p>
+ */
+public class ContentId {
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private ContentId() {
+        // This constructor is not meant to be called
+    }
+
+    /**
+     * FNV-1a 64-bit offset basis.
+     */
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    /**
+     * FNV-1a 64-bit prime.
+     */
+    private static final long PRIME = 0x100000001b3L;
+
+    /**
+     * Byte hashed between two parts.
+     */
+    private static final int SEPARATOR = 0x1F;
+
+    /**
+     * Byte hashed in place of a null part, so that null and "null" differ.
+     */
+    private static final int NULL = 0x00;
+
+    /**
+     * Returns the ID of the given content.
+     *
+     * @param parts The values identifying the entity, in a fixed order
+     * @return The ID, as 16 hexadecimal digits
+     */
+    public static String of(Object... parts) {
+        return candidate(0, parts);
+    }
+
+    /**
+     * Returns a candidate ID of the given content.
+     * <p>
+     * Attempt 0 is the ID returned by {@link #of(Object...)}; the following attempts give
+     * other IDs of the same content, to be used when the previous ones are already taken.
+     * </p>
+     *
+     * @param attempt The number of candidates already rejected
+     * @param parts   The values identifying the entity, in a fixed order
+     * @return The ID, as 16 hexadecimal digits
+     */
+    public static String candidate(int attempt, Object... parts) {
+        long hash = OFFSET_BASIS;
+        for (Object part : parts) {
+            if (part == null) {
+                hash = (hash ^ NULL) * PRIME;
+            } else {
+                for (byte b : String.valueOf(part).getBytes(StandardCharsets.UTF_8)) {
+                    hash = (hash ^ (b & 0xFF)) * PRIME;
+                }
+            }
+            hash = (hash ^ SEPARATOR) * PRIME;
+        }
+        if (attempt > 0) {
+            hash = (hash ^ attempt) * PRIME;
+        }
+        return String.format("%016x", mix(hash));
+    }
+
+    /**
+     * Spreads every input bit over the whole hash (finalizer of MurmurHash3).
+     *
+     * @param hash The hash to mix
+     * @return The mixed hash
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93e7f4a0579L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable batch of coordinates, stored as a structure of arrays for the batch
+ * distance computations of {@link DistanceCalculator}.
+ * <p>
+ * Coordinates are converted once when added: latitude and longitude are kept in
+ * radians together with the cosine of the latitude, so that computing a distance
+ * from a reference point does not convert, unbox or recompute anything per point.
+ * </p>
+ * <p>
+ * Points are addressed by their index in the batch. Removing a point moves the
+ * last point into its slot, so callers keeping data parallel to the batch must
+ * do the same.
+ * </p>
+ */
+public class CoordinateBatch {
+
+    /**
+     * The latitudes in radians, of which only the first {@link #size} are valid.
+     */
+    double[] latitudes;
+
+    /**
+     * The longitudes in radians, of which only the first {@link #size} are valid.
+     */
+    double[] longitudes;
+
+    /**
+     * The cosines of the latitudes, of which only the first {@link #size} are valid.
+     */
+    double[] cosLatitudes;
+
+    /**
+     * The number of points in the batch.
+     */
+    int size = 0;
+
+    /**
+     * Creates an empty batch.
+     */
+    public CoordinateBatch() {
+        this(4);
+    }
+
+    /**
+     * Creates an empty batch with room for a given number of points.
+     *
+     * @param capacity The initial capacity
+     */
+    public CoordinateBatch(int capacity) {
+        latitudes = new double[Math.max(1, capacity)];
+        longitudes = new double[latitudes.length];
+        cosLatitudes = new double[latitudes.length];
+    }
+
+    /**
+     * Appends a point to the batch.
+     *
+     * @param latitude  The latitude in degrees
+     * @param longitude The longitude in degrees
+     * @return The index of the point
+     */
+    public int add(double latitude, double longitude) {
+        if (size == latitudes.length) {
+            latitudes = Arrays.copyOf(latitudes, size * 2);
+            longitudes = Arrays.copyOf(longitudes, size * 2);
+            cosLatitudes = Arrays.copyOf(cosLatitudes, size * 2);
+        }
+        double latRad = Math.toRadians(latitude);
+        latitudes[size] = latRad;
+        longitudes[size] = Math.toRadians(longitude);
+        cosLatitudes[size] = Math.cos(latRad);
+        return size++;
+    }
+
+    /**
+     * Removes a point, moving the last point of the batch into its slot.
+     *
+     * @param index The index of the point to remove
+     */
+    public void removeAt(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        size--;
+        latitudes[index] = latitudes[size];
+        longitudes[index] = longitudes[size];
+        cosLatitudes[index] = cosLatitudes[size];
+    }
+
+    /**
+     * Returns the number of points in the batch.
+     *
+     * @return The number of points
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -13,6 +13,11 @@ import uni.insubria.theknife.model.Restaurant;
  * Utility class for calculating geographical distances between locations.
  * Uses the Haversine formula to calculate the great-circle distance between two points on a sphere.
  * <p>
+ * Besides the single-point methods, distances from a reference point can be computed in batch
+ * over a {@link CoordinateBatch}: the reference point is converted once, and the loop only reads
+ * primitive arrays of pre-converted coordinates.
+ * </p>
+ * <p>
  * This class is annotated with Lombok's @UtilityClass which automatically makes the class final,
  * adds a private constructor, and makes all methods static.
  * </p>
@@ -23,7 +28,7 @@ public class DistanceCalculator {
     /**
      * Earth's radius in kilometers, used for distance calculations.
      */
-    private static final double EARTH_RADIUS_KM = 6371.0;
+    public static final double EARTH_RADIUS_KM = 6371.0;
 
     /**
      * Calculates the distance between a restaurant and a reference coordinate in kilometers.
@@ -48,6 +53,106 @@ public class DistanceCalculator {
         return Math.round(EARTH_RADIUS_KM * c);
     }
 
+    /**
+     * Calculates the distance between two points in kilometers, without rounding.
+     *
+     * @param startLat  The latitude of the first point in degrees
+     * @param startLong The longitude of the first point in degrees
+     * @param endLat    The latitude of the second point in degrees
+     * @param endLong   The longitude of the second point in degrees
+     * @return The distance in kilometers
+     */
+    public static double distanceInKm(double startLat, double startLong, double endLat, double endLong) {
+        double a = calculateHaversineFormula(Math.toRadians(startLat), Math.toRadians(startLong),
+                Math.toRadians(endLat), Math.toRadians(endLong));
+        return EARTH_RADIUS_KM * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    /**
+     * Calculates the distances between a reference point and every point of a batch.
+     *
+     * @param latitude  The latitude of the reference point in degrees
+     * @param longitude The longitude of the reference point in degrees
+     * @param batch     The points to calculate the distance of
+     * @param distances The array receiving the distances in kilometers, at least as long as the batch
+     */
+    public static void distancesInKm(double latitude, double longitude, CoordinateBatch batch, double[] distances) {
+        double refLat = Math.toRadians(latitude);
+        double refLong = Math.toRadians(longitude);
+        double refCos = Math.cos(refLat);
+        double[] lats = batch.latitudes;
+        double[] longs = batch.longitudes;
+        double[] cosines = batch.cosLatitudes;
+        for (int i = 0; i < batch.size; i++) {
+            distances[i] = haversineKm(refLat, refLong, refCos, lats[i], longs[i], cosines[i]);
+        }
+    }
+
+    /**
+     * Finds the points of a batch within a given distance from a reference point.
+     * <p>
+     * Points are first checked with an equirectangular estimate, which needs no trigonometry:
+     * since sin(x/2) &ge; x/&pi; for |x| &le; &pi;, the estimate is a lower bound of the Haversine
+     * component, and the points it places outside the radius are skipped without computing
+     * their exact distance.
+     * </p>
+     *
+     * @param latitude  The latitude of the reference point in degrees
+     * @param longitude The longitude of the reference point in degrees
+     * @param radiusKm  The maximum distance in kilometers
+     * @param batch     The points to check
+     * @param indexes   The array receiving the indexes of the points within the distance
+     * @param distances The array receiving their distances in kilometers, parallel to {@code indexes}
+     * @return The number of points within the distance
+     */
+    public static int withinRadius(double latitude, double longitude, double radiusKm,
+                                   CoordinateBatch batch, int[] indexes, double[] distances) {
+        double refLat = Math.toRadians(latitude);
+        double refLong = Math.toRadians(longitude);
+        double refCos = Math.cos(refLat);
+        double angle = radiusKm / EARTH_RADIUS_KM;
+        double sinHalfAngle = Math.sin(Math.min(angle, Math.PI) / 2);
+        // Bound on the estimate, scaled by pi^2 to keep the division out of the loop
+        double limit = angle >= Math.PI ? Double.POSITIVE_INFINITY : sinHalfAngle * sinHalfAngle * Math.PI * Math.PI;
+
+        double[] lats = batch.latitudes;
+        double[] longs = batch.longitudes;
+        double[] cosines = batch.cosLatitudes;
+        int count = 0;
+        for (int i = 0; i < batch.size; i++) {
+            double latDistance = lats[i] - refLat;
+            double longDistance = Math.abs(longs[i] - refLong);
+            if (longDistance > Math.PI) longDistance = 2 * Math.PI - longDistance;
+            if (latDistance * latDistance + refCos * cosines[i] * longDistance * longDistance > limit) continue;
+
+            double distance = haversineKm(refLat, refLong, refCos, lats[i], longs[i], cosines[i]);
+            if (distance <= radiusKm) {
+                indexes[count] = i;
+                distances[count] = distance;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Calculates the Haversine distance from pre-converted coordinates.
+     *
+     * @param refLat  The latitude of the reference point in radians
+     * @param refLong The longitude of the reference point in radians
+     * @param refCos  The cosine of the latitude of the reference point
+     * @param lat     The latitude of the other point in radians
+     * @param lon     The longitude of the other point in radians
+     * @param cos     The cosine of the latitude of the other point
+     * @return The distance in kilometers
+     */
+    private static double haversineKm(double refLat, double refLong, double refCos, double lat, double lon, double cos) {
+        double sinLat = Math.sin((lat - refLat) / 2);
+        double sinLong = Math.sin((lon - refLong) / 2);
+        double a = sinLat * sinLat + refCos * cos * sinLong * sinLong;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
     /**
      * Calculates the Haversine formula component for spherical distance calculation.
      *
@@ -0,0 +1,135 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.util;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Running statistics of a latency, e.g. the time from a user input to the rendering of its result.
+ * <p>
+ * Every sample is logged at debug level together with the running mean and maximum,
+ * so that the latency can be tracked from the application log.
+ * </p>
+ */
+@Slf4j
+public class LatencyMetric {
+
+    /**
+     * The name of the metric, used in the log.
+     */
+    @Getter
+    private final String name;
+
+    /**
+     * The number of recorded samples.
+     */
+    private long count;
+
+    /**
+     * The most recent sample in nanoseconds.
+     */
+    private long lastNanos;
+
+    /**
+     * The highest sample in nanoseconds.
+     */
+    private long maxNanos;
+
+    /**
+     * The sum of all samples in nanoseconds.
+     */
+    private long totalNanos;
+
+    /**
+     * Creates a new metric with no samples.
+     *
+     * @param name The name of the metric, used in the log
+     */
+    public LatencyMetric(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a sample measured from a start time until now.
+     *
+     * @param startNanos The start of the measured interval, as returned by {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        long sample = System.nanoTime() - startNanos;
+        long samples;
+        long mean;
+        long max;
+        synchronized (this) {
+            count++;
+            lastNanos = sample;
+            maxNanos = Math.max(maxNanos, sample);
+            totalNanos += sample;
+            // Read together, so that the logged statistics belong to the same samples
+            samples = count;
+            mean = totalNanos / count;
+            max = maxNanos;
+        }
+        log.debug("{}: {} ms (mean {} ms, max {} ms, {} samples)",
+                name, toMillis(sample), toMillis(mean), toMillis(max), samples);
+    }
+
+    /**
+     * Returns the number of recorded samples.
+     *
+     * @return The number of samples
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the most recent sample.
+     *
+     * @return The latest latency in nanoseconds, or 0 if no sample has been recorded
+     */
+    public synchronized long getLastNanos() {
+        return lastNanos;
+    }
+
+    /**
+     * Returns the highest sample.
+     *
+     * @return The highest latency in nanoseconds, or 0 if no sample has been recorded
+     */
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Returns the sum of the recorded samples.
+     *
+     * @return The total latency in nanoseconds
+     */
+    public synchronized long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns the mean of the recorded samples.
+     *
+     * @return The mean latency in nanoseconds, or 0 if no sample has been recorded
+     */
+    public synchronized long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds with a fractional part.
+     *
+     * @param nanos The duration in nanoseconds
+     * @return The duration in milliseconds
+     */
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
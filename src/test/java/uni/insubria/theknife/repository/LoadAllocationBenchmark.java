@@ -0,0 +1,246 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import uni.insubria.theknife.model.Restaurant;
+import uni.insubria.theknife.model.Review;
+import uni.insubria.theknife.model.User;
+import uni.insubria.theknife.util.ContentId;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures the memory allocated by loading the former JSON files of the reviews and of the users.
+ * <p>
+ * The load path replaced by the typed binding, which read a file into a map of LinkedHashMaps
+ * and then converted every entry with {@code convertValue}, is compared with the one of
+ * {@link JsonFileStore}, which binds the file straight to a map of beans. Both read the same
+ * synthetic file, generated in a temporary directory: {@value #REVIEWS} reviews, and
+ * {@value #USERS} users with {@value #RESTAURANTS_PER_USER} embedded restaurants each, as
+ * {@code users.json} was written before the restaurants were stored as references.
+ * </p>
+ * <p>
+ * The allocation is read from {@link ThreadMXBean#getCurrentThreadAllocatedBytes()} after
+ * {@value #WARMUP} warm-up rounds, and the median of {@value #ROUNDS} rounds is printed.
+ * The benchmark is skipped unless run explicitly:
+ * </p>
+ * <pre>
+ * mvn test -Dtest=LoadAllocationBenchmark -Dtheknife.benchmark=true
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "theknife.benchmark", matches = "true")
+class LoadAllocationBenchmark {
+    /**
+     * Number of reviews of the synthetic reviews file.
+     */
+    private static final int REVIEWS = 20_000;
+
+    /**
+     * Number of users of the synthetic users file.
+     */
+    private static final int USERS = 2_000;
+
+    /**
+     * Number of restaurants embedded in every user.
+     */
+    private static final int RESTAURANTS_PER_USER = 5;
+
+    /**
+     * Number of loads run before measuring.
+     */
+    private static final int WARMUP = 5;
+
+    /**
+     * Number of measured loads.
+     */
+    private static final int ROUNDS = 10;
+
+    /**
+     * Text the review contents and the restaurant descriptions are cut from.
+     */
+    private static final String TEXT = ("Cucina del territorio in un ambiente accogliente, con una carta dei vini "
+            + "curata e un servizio attento. Il menu cambia con le stagioni e propone piatti della tradizione "
+            + "rivisitati con tecnica e leggerezza, accanto a una selezione di formaggi e a dolci della casa. ").repeat(2);
+
+    /**
+     * Source of the allocation counters of the current thread.
+     */
+    private static final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * A load of a file into a map of beans.
+     */
+    @FunctionalInterface
+    private interface Load {
+        /**
+         * Runs the load.
+         *
+         * @return The loaded entries
+         * @throws IOException If the file cannot be read
+         */
+        Map<String, ?> run() throws IOException;
+    }
+
+    /**
+     * The median allocation and time of a load.
+     *
+     * @param bytes The allocated bytes
+     * @param nanos The elapsed time, in nanoseconds
+     */
+    private record Measure(long bytes, long nanos) {
+        @Override
+        public String toString() {
+            return String.format("%.1f MB / %d ms", bytes / 1e6, nanos / 1_000_000);
+        }
+    }
+
+    @Test
+    void reviews(@TempDir Path directory) throws IOException {
+        ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL)
+                .setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+        Random random = new Random(42);
+        Map<String, Review> reviews = new TreeMap<>();
+        for (int i = 0; i < REVIEWS; i++) {
+            Review review = new Review()
+                    .setId(ContentId.of("user" + i % USERS, "restaurant" + i))
+                    .setUser(new User().setUsername("user" + i % USERS))
+                    .setRestaurant(new Restaurant().setId(ContentId.of("restaurant" + i)))
+                    .setContent(TEXT.substring(0, 40 + random.nextInt(200)))
+                    .setStars(1 + random.nextInt(5))
+                    .setAnswer(i % 3 == 0 ? "Grazie, apprezziamo il suo feedback!" : null);
+            reviews.put(review.getId(), review);
+        }
+        Path file = directory.resolve("reviews.json");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), reviews);
+
+        compare("reviews.json", REVIEWS,
+                () -> loadUntyped(mapper, file, Review.class),
+                () -> new JsonFileStore<>(file.toString(), mapper, Review.class).toMap());
+    }
+
+    @Test
+    void users(@TempDir Path directory) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Random random = new Random(42);
+        ObjectNode users = mapper.createObjectNode();
+        for (int i = 0; i < USERS; i++) {
+            ObjectNode user = users.putObject("user" + i);
+            user.put("username", "user" + i);
+            user.put("firstName", "Nome" + i);
+            user.put("lastName", "Cognome" + i);
+            user.put("password", "$2a$10$RQTcwtH79uBXdpGcyZYm1ON6U17eKMIGAPg3ExU/Yn8mpFwX1Bvwm");
+            user.putArray("birthDate").add(1970 + i % 40).add(1 + i % 12).add(1 + i % 28);
+            user.put("city", "Varese, Italy");
+            user.put("role", "CLIENTE");
+            ArrayNode restaurants = user.putArray("restaurants");
+            for (int j = 0; j < RESTAURANTS_PER_USER; j++) {
+                int number = random.nextInt(REVIEWS);
+                ObjectNode restaurant = restaurants.addObject();
+                restaurant.put("id", ContentId.of("restaurant" + number));
+                restaurant.put("name", "Ristorante " + number);
+                restaurant.put("address", "Via Roma " + number + ", 21100 Varese");
+                restaurant.put("location", "Varese, Italy");
+                restaurant.put("price", "€€");
+                restaurant.put("cuisine", "Cucina regionale, Creativa");
+                restaurant.put("longitude", 8.82 + random.nextDouble());
+                restaurant.put("latitude", 45.81 + random.nextDouble());
+                restaurant.put("phone", "+39 0332 " + number);
+                restaurant.put("michelinUrl", "https://guide.michelin.com/it/it/lombardia/varese/ristorante/" + number);
+                restaurant.put("websiteUrl", "https://www.ristorante" + number + ".it/");
+                restaurant.put("award", "Selected Restaurants");
+                restaurant.put("greenStar", false);
+                restaurant.put("facilities", "Aria condizionata,Terrazza,Prenotazione");
+                restaurant.put("description", TEXT);
+                restaurant.putNull("distance");
+                restaurant.putArray("reviews");
+                restaurant.putNull("user");
+            }
+        }
+        Path file = directory.resolve("users.json");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), users);
+
+        compare("users.json", USERS,
+                () -> loadUntyped(mapper, file, User.class),
+                () -> new JsonFileStore<>(file.toString(), mapper, User.class).toMap());
+    }
+
+    /**
+     * Measures the two load paths of a file, prints the results and checks that the typed one allocates less.
+     *
+     * @param name    The name of the file, for the report
+     * @param entries The number of entries of the file
+     * @param untyped The load path replaced by the typed binding
+     * @param typed   The current load path
+     * @throws IOException If the file cannot be read
+     */
+    private static void compare(String name, int entries, Load untyped, Load typed) throws IOException {
+        Measure before = measure(untyped, entries);
+        Measure after = measure(typed, entries);
+        System.out.printf("%s (%d entries): untyped %s, typed %s%n", name, entries, before, after);
+        assertTrue(after.bytes() < before.bytes(), "The typed binding should allocate less");
+    }
+
+    /**
+     * Runs a load after the warm-up rounds and returns its median allocation and time.
+     *
+     * @param load    The load
+     * @param entries The number of entries the load must return
+     * @return The median of the measured rounds
+     * @throws IOException If the file cannot be read
+     */
+    private static Measure measure(Load load, int entries) throws IOException {
+        for (int i = 0; i < WARMUP; i++) load.run();
+        long[] bytes = new long[ROUNDS];
+        long[] nanos = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            long startBytes = threads.getCurrentThreadAllocatedBytes();
+            long startNanos = System.nanoTime();
+            Map<String, ?> loaded = load.run();
+            nanos[i] = System.nanoTime() - startNanos;
+            bytes[i] = threads.getCurrentThreadAllocatedBytes() - startBytes;
+            assertEquals(entries, loaded.size());
+        }
+        Arrays.sort(bytes);
+        Arrays.sort(nanos);
+        return new Measure(bytes[ROUNDS / 2], nanos[ROUNDS / 2]);
+    }
+
+    /**
+     * Loads a file as the repositories did before the typed binding: into a map of
+     * LinkedHashMaps first, then converting every entry to a bean.
+     *
+     * @param mapper The mapper of the repository
+     * @param file   The JSON file
+     * @param type   The class of the values
+     * @param <V>    The type of the values
+     * @return The entries of the file
+     * @throws IOException If the file cannot be read
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> Map<String, V> loadUntyped(ObjectMapper mapper, Path file, Class<V> type) throws IOException {
+        Map<String, V> entries = SnapshotWriter.read(file.toString(), in -> mapper.readValue(in, Map.class));
+        entries.keySet().forEach(key -> entries.put(key, mapper.convertValue(entries.get(key), type)));
+        return entries;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of {@link LogStructuredStore}: recovery of the write-ahead log, flushes and
+ * compactions across reopenings, and the lock of the directory.
+ */
+class LogStructuredStoreTest {
+    /**
+     * Values stored as UTF-8 strings.
+     */
+    private static final LogStructuredStore.Codec<String> STRINGS = new LogStructuredStore.Codec<>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    @Test
+    void replaysTheLogWhenReopened(@TempDir Path directory) throws IOException {
+        LogStructuredStore<String> store = new LogStructuredStore<>(directory, STRINGS);
+        store.put("a", "uno");
+        store.put("b", "due");
+        store.put("a", "tre");
+        store.remove("b");
+        store.close();
+
+        store = new LogStructuredStore<>(directory, STRINGS);
+        assertEquals("tre", store.get("a"));
+        assertNull(store.get("b"));
+        assertEquals(Map.of("a", "tre"), toMap(store));
+        store.close();
+    }
+
+    @Test
+    void discardsATruncatedRecordAtTheEndOfTheLog(@TempDir Path directory) throws IOException {
+        LogStructuredStore<String> store = new LogStructuredStore<>(directory, STRINGS);
+        store.put("a", "uno");
+        store.close();
+        Path wal = directory.resolve("wal.log");
+        long firstRecord = Files.size(wal);
+
+        store = new LogStructuredStore<>(directory, STRINGS);
+        store.put("b", "due");
+        store.close();
+        // A crash in the middle of the second append
+        truncate(wal, Files.size(wal) - 2);
+
+        store = new LogStructuredStore<>(directory, STRINGS);
+        assertEquals("uno", store.get("a"));
+        assertNull(store.get("b"));
+        assertEquals(firstRecord, Files.size(wal), "The log should be cut after the last complete record");
+
+        // Records appended after the recovery are replayed too
+        store.put("c", "tre");
+        store.close();
+        store = new LogStructuredStore<>(directory, STRINGS);
+        assertEquals(Map.of("a", "uno", "c", "tre"), toMap(store));
+        store.close();
+    }
+
+    @Test
+    void discardsARecordWithAWrongChecksum(@TempDir Path directory) throws IOException {
+        LogStructuredStore<String> store = new LogStructuredStore<>(directory, STRINGS);
+        store.put("a", "uno");
+        store.put("b", "due");
+        store.close();
+        Path wal = directory.resolve("wal.log");
+
+        // Flips the last byte of the value of the second record
+        try (RandomAccessFile file = new RandomAccessFile(wal.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+
+        store = new LogStructuredStore<>(directory, STRINGS);
+        assertEquals(Map.of("a", "uno"), toMap(store));
+        store.close();
+    }
+
+    @Test
+    void keepsTheLatestValuesAcrossFlushesAndCompactions(@TempDir Path directory) throws IOException {
+        Map<String, String> expected = new TreeMap<>();
+        LogStructuredStore<String> store = new LogStructuredStore<>(directory, STRINGS);
+        String padding = "x".repeat(1000);
+        // Enough data for several flushes, and so for a compaction
+        for (int round = 0; round < 6; round++) {
+            for (int i = 0; i < 1200; i++) {
+                String key = String.format("key-%05d", i);
+                if (i % 7 == round) {
+                    store.remove(key);
+                    expected.remove(key);
+                } else {
+                    String value = round + "-" + i + padding;
+                    store.put(key, value);
+                    expected.put(key, value);
+                }
+            }
+        }
+        assertEquals(expected, toMap(store));
+        store.close();
+
+        store = new LogStructuredStore<>(directory, STRINGS);
+        assertEquals(expected, toMap(store));
+        assertNull(store.get("key-00005"));
+        assertEquals(expected.get("key-00001"), store.get("key-00001"));
+        store.close();
+    }
+
+    @Test
+    void deletesFilesNotListedInTheManifest(@TempDir Path directory) throws IOException {
+        LogStructuredStore<String> store = new LogStructuredStore<>(directory, STRINGS);
+        store.put("a", "uno");
+        store.flush();
+        store.close();
+        // Leftovers of a flush interrupted before the manifest was replaced
+        Path orphan = Files.writeString(directory.resolve("segment-99999.dat"), "partial");
+        Path temporary = Files.writeString(directory.resolve("MANIFEST.tmp"), "partial");
+
+        store = new LogStructuredStore<>(directory, STRINGS);
+        assertFalse(Files.exists(orphan));
+        assertFalse(Files.exists(temporary));
+        assertEquals("uno", store.get("a"));
+        store.close();
+    }
+
+    @Test
+    void clearRemovesEverything(@TempDir Path directory) throws IOException {
+        LogStructuredStore<String> store = new LogStructuredStore<>(directory, STRINGS);
+        store.put("a", "uno");
+        store.flush();
+        store.put("b", "due");
+        store.clear();
+        assertTrue(store.isEmpty());
+        store.close();
+
+        store = new LogStructuredStore<>(directory, STRINGS);
+        assertTrue(store.isEmpty());
+        store.close();
+    }
+
+    @Test
+    void refusesADirectoryAlreadyOpen(@TempDir Path directory) throws IOException {
+        LogStructuredStore<String> store = new LogStructuredStore<>(directory, STRINGS);
+        assertThrows(IOException.class, () -> new LogStructuredStore<>(directory, STRINGS));
+        store.close();
+
+        // The lock is released by close
+        new LogStructuredStore<>(directory, STRINGS).close();
+    }
+
+    /**
+     * Reads all the entries of a store.
+     *
+     * @param store The store
+     * @return The entries, sorted by key
+     * @throws IOException If the store cannot be read
+     */
+    private static Map<String, String> toMap(LogStructuredStore<String> store) throws IOException {
+        Map<String, String> entries = new TreeMap<>();
+        store.forEach(entries::put);
+        return entries;
+    }
+
+    /**
+     * Cuts a file to a given length.
+     *
+     * @param file   The file
+     * @param length The new length in bytes
+     * @throws IOException If the file cannot be written
+     */
+    private static void truncate(Path file, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+}
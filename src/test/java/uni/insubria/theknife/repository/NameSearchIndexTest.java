@@ -0,0 +1,94 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import org.junit.jupiter.api.Test;
+import uni.insubria.theknife.model.Restaurant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests of {@link NameSearchIndex}.
+ */
+class NameSearchIndexTest {
+
+    @Test
+    void ranksPrefixThenWordStartThenInnerMatches() {
+        NameSearchIndex index = index("Trattoria Roma", "La Romantica", "Da Romano", "Aroma", "Romagna Mia", "Milano");
+        assertEquals(List.of("Romagna Mia", "Da Romano", "La Romantica", "Trattoria Roma", "Aroma"), names(index.search("roma")));
+    }
+
+    @Test
+    void ranksAWordStartAfterAnInnerOccurrence() {
+        NameSearchIndex index = index("Aroma Roma", "Aromatico");
+        assertEquals(List.of("Aroma Roma", "Aromatico"), names(index.search("roma")));
+    }
+
+    @Test
+    void ignoresCaseAndAccents() {
+        NameSearchIndex index = index("Caffè Nazionale", "CAFFE' DEL CORSO", "Il Caffe");
+        // Spaces and punctuation are ignored by the collator ordering the names
+        assertEquals(List.of("CAFFE' DEL CORSO", "Caffè Nazionale", "Il Caffe"), names(index.search("CAFFÉ")));
+    }
+
+    @Test
+    void shortQueriesWalkTheNamesInOrder() {
+        NameSearchIndex index = index("Zafferano", "al Borgo", "Osteria Ai", "Alba", "Baia");
+        assertEquals(List.of("Alba", "al Borgo", "Osteria Ai", "Baia", "Zafferano"), names(index.search("a")));
+        assertEquals(List.of("Alba", "al Borgo", "Baia", "Osteria Ai", "Zafferano"), names(index.search(" ")));
+    }
+
+    @Test
+    void followsRenamesAndRemovals() {
+        RestaurantOrdinals ordinals = new RestaurantOrdinals();
+        List<Restaurant> restaurants = restaurants("Trattoria Roma", "Pizzeria Napoli");
+        NameSearchIndex index = new NameSearchIndex(ordinals, restaurants);
+
+        index.update(new Restaurant().setId(restaurants.get(0).getId()).setName("Trattoria Milano"));
+        assertEquals(List.of(), index.search("roma"));
+        assertEquals(List.of("Trattoria Milano"), names(index.search("milano")));
+
+        index.remove(restaurants.get(1));
+        assertEquals(List.of(), index.search("napoli"));
+        assertEquals(List.of("Trattoria Milano"), names(index.search("")));
+    }
+
+    /**
+     * Builds an index of restaurants with the given names.
+     *
+     * @param names The names
+     * @return The index
+     */
+    private static NameSearchIndex index(String... names) {
+        return new NameSearchIndex(new RestaurantOrdinals(), restaurants(names));
+    }
+
+    /**
+     * Creates restaurants with the given names.
+     *
+     * @param names The names
+     * @return The restaurants, with IDs "r0", "r1", ...
+     */
+    private static List<Restaurant> restaurants(String... names) {
+        List<Restaurant> restaurants = new ArrayList<>();
+        for (String name : names) restaurants.add(new Restaurant().setId("r" + restaurants.size()).setName(name));
+        return restaurants;
+    }
+
+    /**
+     * Returns the names of a list of restaurants.
+     *
+     * @param restaurants The restaurants
+     * @return Their names, in the same order
+     */
+    private static List<String> names(List<Restaurant> restaurants) {
+        return restaurants.stream().map(Restaurant::getName).toList();
+    }
+}
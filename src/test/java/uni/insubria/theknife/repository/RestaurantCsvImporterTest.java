@@ -0,0 +1,116 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uni.insubria.theknife.model.Restaurant;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests of {@link RestaurantCsvImporter}, in particular of the records split across the
+ * blocks the file is read in.
+ */
+class RestaurantCsvImporterTest {
+    /**
+     * Header of the Michelin CSV.
+     */
+    private static final String HEADER = "Name,Address,Location,Price,Cuisine,Longitude,Latitude,PhoneNumber,"
+            + "Url,WebsiteUrl,Award,GreenStar,FacilitiesAndServices,Description";
+
+    @Test
+    void parsesQuotedFields() {
+        List<String[]> records = RestaurantCsvImporter.parse(
+                "a,\"b, c\",\"d \"\"e\"\"\"\r\n\n\"f\ng\",,h\n");
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[]{"a", "b, c", "d \"e\""}, records.get(0));
+        assertArrayEquals(new String[]{"f\ng", "", "h"}, records.get(1));
+    }
+
+    @Test
+    void keepsQuotedLineBreaksAcrossBlockBoundaries(@TempDir Path directory) throws IOException {
+        Random random = new Random(3);
+        StringBuilder csv = new StringBuilder("\uFEFF").append(HEADER).append('\n');
+        int count = 4000;
+        String[] descriptions = new String[count];
+        for (int i = 0; i < count; i++) {
+            descriptions[i] = description(random, i);
+            csv.append(quote("Ristorante " + i)).append(',')
+                    .append(quote("Via Roma " + i + ", Varese")).append(',')
+                    .append("\"Varese, Italy\",€€,Creativa,")
+                    .append(8.8 + i / 10000.0).append(',').append(45.8).append(',')
+                    .append("+39 0332 ").append(i).append(",,,")
+                    .append("Selected Restaurants,").append(i % 2).append(',')
+                    .append(quote("Terrazza,Parcheggio")).append(',')
+                    .append(quote(descriptions[i]))
+                    .append(i % 3 == 0 ? "\r\n" : "\n");
+        }
+        Path file = directory.resolve("michelin.csv");
+        Files.writeString(file, csv, StandardCharsets.UTF_8);
+
+        List<Restaurant> restaurants = RestaurantCsvImporter.importFile(file.toString());
+
+        assertEquals(count, restaurants.size());
+        for (int i = 0; i < count; i++) {
+            Restaurant restaurant = restaurants.get(i);
+            assertEquals("Ristorante " + i, restaurant.getName());
+            assertEquals("Via Roma " + i + ", Varese", restaurant.getAddress());
+            assertEquals("Varese, Italy", restaurant.getLocation());
+            assertEquals(45.8f, restaurant.getLatitude());
+            assertEquals(i % 2, restaurant.getGreenStar());
+            assertEquals("Terrazza,Parcheggio", restaurant.getFacilities());
+            assertEquals(descriptions[i], restaurant.getDescription(), "Description of restaurant " + i);
+        }
+    }
+
+    @Test
+    void readsAFileShorterThanABlock(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("michelin.csv");
+        Files.writeString(file, HEADER + "\n\"Da Mario\",,Milano,€,,,,,,,,,,\"Una riga\ne un'altra\"", StandardCharsets.UTF_8);
+
+        List<Restaurant> restaurants = RestaurantCsvImporter.importFile(file.toString());
+
+        assertEquals(1, restaurants.size());
+        assertEquals("Da Mario", restaurants.get(0).getName());
+        assertNull(restaurants.get(0).getLatitude());
+        assertEquals("Una riga\ne un'altra", restaurants.get(0).getDescription());
+    }
+
+    /**
+     * Returns a description with line breaks, commas and quotes; every 500th is longer
+     * than a whole block of the importer.
+     *
+     * @param random The source of the lengths
+     * @param i      The number of the restaurant
+     * @return The description
+     */
+    private static String description(Random random, int i) {
+        String text = "Cucina \"di casa\", piatti del giorno.\nServizio attento.\r\n";
+        int repeat = i % 500 == 0 ? 6000 : 1 + random.nextInt(6);
+        return "Descrizione " + i + ": " + text.repeat(repeat) + "Fine.";
+    }
+
+    /**
+     * Quotes a CSV field, doubling its quotes.
+     *
+     * @param value The value of the field
+     * @return The quoted field
+     */
+    private static String quote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
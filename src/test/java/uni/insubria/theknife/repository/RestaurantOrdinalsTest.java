@@ -0,0 +1,82 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import org.junit.jupiter.api.Test;
+import uni.insubria.theknife.model.Restaurant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests of {@link RestaurantOrdinals} and of the views sharing one table.
+ */
+class RestaurantOrdinalsTest {
+
+    @Test
+    void reusesTheLowestReleasedOrdinal() {
+        RestaurantOrdinals ordinals = new RestaurantOrdinals();
+        for (int i = 0; i < 5; i++) assertEquals(i, ordinals.assign("r" + i));
+        assertEquals(2, ordinals.assign("r2"));
+
+        assertEquals(3, ordinals.release("r3"));
+        assertEquals(1, ordinals.release("r1"));
+        assertEquals(-1, ordinals.release("r1"));
+        assertNull(ordinals.idOf(1));
+        assertFalse(ordinals.contains("r1"));
+
+        assertEquals(1, ordinals.assign("a"));
+        assertEquals(3, ordinals.assign("b"));
+        assertEquals(5, ordinals.assign("c"));
+        assertEquals("b", ordinals.idOf(3));
+        assertEquals(6, ordinals.size());
+        assertEquals(6, ordinals.capacity());
+    }
+
+    @Test
+    void viewsDoNotGrowWithDeletesAndReAdds() {
+        RestaurantOrdinals ordinals = new RestaurantOrdinals();
+        List<Restaurant> restaurants = new ArrayList<>();
+        for (int i = 0; i < 50; i++) restaurants.add(restaurant(i));
+        RestaurantIndex restaurantIndex = new RestaurantIndex(ordinals, restaurants);
+        NameSearchIndex nameSearchIndex = new NameSearchIndex(ordinals, restaurants);
+
+        for (int i = 50; i < 1050; i++) {
+            // Removed from every view before the ordinal is released, as the catalogue does
+            Restaurant removed = restaurants.remove(0);
+            restaurantIndex.remove(removed);
+            nameSearchIndex.remove(removed);
+            ordinals.release(removed.getId());
+
+            Restaurant added = restaurant(i);
+            restaurants.add(added);
+            restaurantIndex.add(added);
+            nameSearchIndex.add(added);
+        }
+
+        assertEquals(50, ordinals.capacity());
+        assertEquals(restaurants.size(), restaurantIndex.withLocation("Varese").size());
+        // The restaurant now holding the ordinal of a removed one is found, the removed one is not
+        assertEquals(List.of(restaurants.get(restaurants.size() - 1)), nameSearchIndex.search("Trattoria 1049"));
+        assertEquals(List.of(), nameSearchIndex.search("Trattoria 49"));
+        assertEquals(List.of(), nameSearchIndex.search("Trattoria 999"));
+    }
+
+    /**
+     * Creates a restaurant in Varese.
+     *
+     * @param i The number of the restaurant
+     * @return The restaurant, with ID "r" + i
+     */
+    private static Restaurant restaurant(int i) {
+        return new Restaurant().setId("r" + i).setName("Trattoria " + i).setLocation("Varese");
+    }
+}
@@ -0,0 +1,120 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uni.insubria.theknife.model.AttributeDictionary;
+import uni.insubria.theknife.model.Restaurant;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests of {@link RestaurantSnapshot}.
+ */
+class RestaurantSnapshotTest {
+
+    @Test
+    void readsBackWhatWasWritten(@TempDir Path directory) throws IOException {
+        Map<String, Restaurant> written = restaurants(new Random(5), 500);
+        String path = directory.resolve("restaurants.bin").toString();
+        RestaurantSnapshot.write(path, written);
+
+        Map<String, Restaurant> read = RestaurantSnapshot.read(path);
+
+        assertEquals(written.keySet(), read.keySet());
+        // Details are read in an order that keeps evicting the cache of the decoded ones
+        for (int pass = 0; pass < 2; pass++) {
+            for (String id : written.keySet()) assertSameRestaurant(written.get(id), read.get(id));
+        }
+    }
+
+    @Test
+    void fallsBackToThePreviousGeneration(@TempDir Path directory) throws IOException {
+        String path = directory.resolve("restaurants.bin").toString();
+        Map<String, Restaurant> first = restaurants(new Random(9), 50);
+        RestaurantSnapshot.write(path, first);
+        RestaurantSnapshot.write(path, restaurants(new Random(10), 60));
+
+        // A crash that left the newest generation truncated
+        try (FileChannel channel = FileChannel.open(directory.resolve("restaurants.bin-2"), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+
+        Map<String, Restaurant> read = RestaurantSnapshot.read(path);
+        assertEquals(first.keySet(), read.keySet());
+        for (String id : first.keySet()) assertSameRestaurant(first.get(id), read.get(id));
+    }
+
+    /**
+     * Checks that a restaurant read from a snapshot has the attributes of the written one.
+     *
+     * @param expected The written restaurant
+     * @param actual   The restaurant read back
+     */
+    private static void assertSameRestaurant(Restaurant expected, Restaurant actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getAddress(), actual.getAddress());
+        assertEquals(expected.getLocation(), actual.getLocation());
+        assertEquals(expected.getCuisine(), actual.getCuisine());
+        assertEquals(expected.getPrice(), actual.getPrice());
+        assertEquals(expected.getAward(), actual.getAward());
+        assertEquals(expected.getLatitude(), actual.getLatitude());
+        assertEquals(expected.getLongitude(), actual.getLongitude());
+        assertEquals(expected.getGreenStar(), actual.getGreenStar());
+        assertEquals(expected.getPhone(), actual.getPhone());
+        assertEquals(expected.getMichelinUrl(), actual.getMichelinUrl());
+        assertEquals(expected.getWebsiteUrl(), actual.getWebsiteUrl());
+        assertEquals(expected.getFacilities(), actual.getFacilities());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertArrayEquals(AttributeDictionary.encodeFacilities(expected.getFacilities()), actual.getFacilityCodes());
+    }
+
+    /**
+     * Creates restaurants with random attributes, some of them missing, empty or not ASCII.
+     *
+     * @param random The source of the attributes
+     * @param count  The number of restaurants
+     * @return The restaurants by ID, in creation order
+     */
+    private static Map<String, Restaurant> restaurants(Random random, int count) {
+        String[] locations = {"Varese, Italy", "Milano, Italy", "Côme, France", null};
+        String[] facilities = {"Terrazza,Parcheggio", "Aria condizionata", "", null};
+        Map<String, Restaurant> restaurants = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            boolean located = random.nextInt(5) > 0;
+            Restaurant restaurant = new Restaurant()
+                    .setId("r" + i)
+                    .setName(i % 7 == 0 ? "Caffè 🍝 " + i : "Ristorante " + i)
+                    .setAddress(random.nextBoolean() ? "Via Roma " + i : null)
+                    .setLocation(locations[random.nextInt(locations.length)])
+                    .setCuisine(random.nextBoolean() ? "Creativa" : "Cucina regionale")
+                    .setPrice("€".repeat(1 + random.nextInt(4)))
+                    .setAward(random.nextBoolean() ? "1 Star" : null)
+                    .setLatitude(located ? 45 + random.nextFloat() : null)
+                    .setLongitude(located ? 8 + random.nextFloat() : null)
+                    .setGreenStar(random.nextInt(3) == 0 ? null : random.nextInt(2))
+                    .setPhone("+39 0332 " + i)
+                    .setMichelinUrl("https://guide.michelin.com/" + i)
+                    .setWebsiteUrl(random.nextBoolean() ? "https://www.ristorante" + i + ".it/" : "")
+                    .setFacilities(facilities[random.nextInt(facilities.length)])
+                    .setDescription("Descrizione\ncon più righe ".repeat(random.nextInt(20)));
+            restaurants.put(restaurant.getId(), restaurant);
+        }
+        return restaurants;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of {@link SnapshotWriter}: rotation of the generations and fallback to the older ones.
+ */
+class SnapshotWriterTest {
+    /**
+     * Reader accepting any content except "invalid".
+     */
+    private static final SnapshotWriter.Reader<String> TEXT = in -> {
+        String text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        if (text.equals("invalid")) throw new IOException("Invalid content");
+        return text;
+    };
+
+    @Test
+    void rotatesThePreviousGenerations(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("store.json");
+        for (int i = 1; i <= 6; i++) write(file, "v" + i);
+
+        assertEquals("v6", Files.readString(file));
+        assertEquals("v5", Files.readString(directory.resolve("store.json.1")));
+        assertEquals("v4", Files.readString(directory.resolve("store.json.2")));
+        assertEquals("v3", Files.readString(directory.resolve("store.json.3")));
+        assertFalse(Files.exists(directory.resolve("store.json.4")));
+        assertFalse(Files.exists(directory.resolve("store.json.tmp")));
+    }
+
+    @Test
+    void readsTheNewestValidGeneration(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("store.json");
+        write(file, "v1");
+        write(file, "v2");
+        write(file, "invalid");
+
+        assertEquals("v2", SnapshotWriter.read(file.toString(), TEXT));
+    }
+
+    @Test
+    void keepsTheCurrentSnapshotWhenTheWriterFails(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("store.json");
+        write(file, "v1");
+
+        assertThrows(IOException.class, () -> SnapshotWriter.write(file.toString(), out -> {
+            out.write("partial".getBytes(StandardCharsets.UTF_8));
+            throw new IOException("Disk full");
+        }));
+
+        assertEquals("v1", SnapshotWriter.read(file.toString(), TEXT));
+        assertFalse(Files.exists(directory.resolve("store.json.1")));
+        assertFalse(Files.exists(directory.resolve("store.json.tmp")));
+    }
+
+    @Test
+    void numberedGenerationsReplaceTheRotatedOnes(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("snapshot.bin");
+        write(file, "rotated");
+        for (int i = 1; i <= 5; i++) {
+            String content = "v" + i;
+            SnapshotWriter.writeVersion(file.toString(), out -> out.write(content.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        assertFalse(Files.exists(file));
+        // The new generation and the three previous ones
+        assertFalse(Files.exists(directory.resolve("snapshot.bin-1")));
+        assertTrue(Files.exists(directory.resolve("snapshot.bin-2")));
+        assertEquals("v5", SnapshotWriter.read(file.toString(), TEXT));
+
+        SnapshotWriter.writeVersion(file.toString(), out -> out.write("invalid".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("v5", SnapshotWriter.read(file.toString(), TEXT));
+    }
+
+    @Test
+    void reportsAMissingSnapshot(@TempDir Path directory) {
+        Path file = directory.resolve("missing.json");
+        assertFalse(SnapshotWriter.exists(file.toString()));
+        assertThrows(FileNotFoundException.class, () -> SnapshotWriter.read(file.toString(), TEXT));
+    }
+
+    /**
+     * Writes a text snapshot with {@link SnapshotWriter#write}.
+     *
+     * @param file    The path of the snapshot
+     * @param content The content
+     * @throws IOException If the snapshot cannot be written
+     */
+    private static void write(Path file, String content) throws IOException {
+        SnapshotWriter.write(file.toString(), out -> out.write(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,217 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.repository;
+
+import org.junit.jupiter.api.Test;
+import uni.insubria.theknife.model.Restaurant;
+import uni.insubria.theknife.util.DistanceCalculator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of {@link SpatialIndex} against a brute-force scan of the same restaurants.
+ */
+class SpatialIndexTest {
+    /**
+     * Tolerance on the distances, in kilometers.
+     */
+    private static final double TOLERANCE = 1e-6;
+
+    @Test
+    void nearestMatchesABruteForceScan() {
+        Random random = new Random(7);
+        List<Restaurant> restaurants = randomRestaurants(random, 3000);
+        SpatialIndex index = new SpatialIndex(new RestaurantOrdinals(), restaurants);
+        Predicate<Restaurant> even = r -> Integer.parseInt(r.getId().substring(1)) % 2 == 0;
+
+        for (int query = 0; query < 200; query++) {
+            double[] point = randomPoint(random);
+            int k = 1 + random.nextInt(50);
+            Predicate<Restaurant> filter = query % 2 == 0 ? r -> true : even;
+            assertDistances(bruteForce(restaurants, point, filter).stream().limit(k).toList(),
+                    index.nearest(point[0], point[1], k, filter));
+        }
+    }
+
+    @Test
+    void nearestReturnsEverythingWhenKExceedsTheIndex() {
+        Random random = new Random(11);
+        List<Restaurant> restaurants = randomRestaurants(random, 40);
+        SpatialIndex index = new SpatialIndex(new RestaurantOrdinals(), restaurants);
+        double[] point = randomPoint(random);
+        assertDistances(bruteForce(restaurants, point, r -> true), index.nearest(point[0], point[1], 100, r -> true));
+    }
+
+    @Test
+    void withinRadiusMatchesABruteForceScan() {
+        Random random = new Random(13);
+        List<Restaurant> restaurants = randomRestaurants(random, 3000);
+        SpatialIndex index = new SpatialIndex(new RestaurantOrdinals(), restaurants);
+
+        for (int query = 0; query < 200; query++) {
+            double[] point = randomPoint(random);
+            double radius = random.nextDouble() * 500;
+            List<SpatialIndex.Neighbor> expected = bruteForce(restaurants, point, r -> true).stream()
+                    .filter(neighbor -> neighbor.distance() <= radius)
+                    .toList();
+            assertDistances(expected, index.withinRadius(point[0], point[1], radius, r -> true));
+        }
+    }
+
+    @Test
+    void seesRemovedAndMovedRestaurants() {
+        Random random = new Random(17);
+        List<Restaurant> restaurants = new ArrayList<>(randomRestaurants(random, 500));
+        RestaurantOrdinals ordinals = new RestaurantOrdinals();
+        SpatialIndex index = new SpatialIndex(ordinals, restaurants);
+
+        for (int i = 0; i < 100; i++) {
+            Restaurant removed = restaurants.remove(random.nextInt(restaurants.size()));
+            index.remove(removed);
+            ordinals.release(removed.getId());
+        }
+        for (int i = 0; i < 100; i++) {
+            double[] point = randomPoint(random);
+            Restaurant moved = restaurants.get(random.nextInt(restaurants.size()));
+            moved.setLatitude((float) point[0]).setLongitude((float) point[1]);
+            index.update(moved);
+        }
+
+        double[] point = randomPoint(random);
+        assertDistances(bruteForce(restaurants, point, r -> true).stream().limit(30).toList(),
+                index.nearest(point[0], point[1], 30, r -> true));
+    }
+
+    @Test
+    void cursorPagesThroughTiesWithoutSkippingOrRepeating() {
+        Random random = new Random(19);
+        // Groups of restaurants at the same point, so that pages often end inside a tie
+        List<Restaurant> restaurants = new ArrayList<>();
+        while (restaurants.size() < 600) {
+            double[] point = randomPoint(random);
+            int group = 1 + random.nextInt(9);
+            for (int i = 0; i < group; i++) {
+                restaurants.add(new Restaurant().setId("r" + restaurants.size())
+                        .setLatitude((float) point[0]).setLongitude((float) point[1]));
+            }
+        }
+        SpatialIndex index = new SpatialIndex(new RestaurantOrdinals(), restaurants);
+
+        for (int pageSize = 1; pageSize <= 7; pageSize++) {
+            double[] point = randomPoint(random);
+            SpatialIndex.Cursor cursor = index.byDistance(point[0], point[1], r -> true);
+            List<SpatialIndex.Neighbor> all = new ArrayList<>();
+            while (cursor.hasNext()) {
+                List<SpatialIndex.Neighbor> page = cursor.next(pageSize);
+                assertTrue(page.size() <= pageSize);
+                all.addAll(page);
+            }
+
+            assertDistances(bruteForce(restaurants, point, r -> true), all);
+            HashSet<String> ids = new HashSet<>();
+            for (SpatialIndex.Neighbor neighbor : all) {
+                assertTrue(ids.add(neighbor.restaurant().getId()), "Repeated " + neighbor.restaurant().getId());
+            }
+            assertTrue(cursor.next(pageSize).isEmpty());
+        }
+    }
+
+    @Test
+    void cursorOnlyMovesPastAdvancedPages() {
+        Random random = new Random(23);
+        List<Restaurant> restaurants = randomRestaurants(random, 100);
+        SpatialIndex index = new SpatialIndex(new RestaurantOrdinals(), restaurants);
+        double[] point = randomPoint(random);
+        List<SpatialIndex.Neighbor> expected = bruteForce(restaurants, point, r -> true);
+        SpatialIndex.Cursor cursor = index.byDistance(point[0], point[1], r -> true);
+
+        List<SpatialIndex.Neighbor> first = cursor.peek(10);
+        // A page that is never shown does not move the cursor
+        assertDistances(first, cursor.peek(10));
+        cursor.advance(first, 10);
+        assertDistances(expected.subList(10, 20), cursor.peek(10));
+
+        List<SpatialIndex.Neighbor> rest = new ArrayList<>(first);
+        while (cursor.hasNext()) rest.addAll(cursor.next(30));
+        assertDistances(expected, rest);
+        assertFalse(cursor.hasNext());
+    }
+
+    /**
+     * Creates restaurants at random points, most of them in northern Italy and some
+     * around the antimeridian and the poles.
+     *
+     * @param random The source of the coordinates
+     * @param count  The number of restaurants
+     * @return The restaurants, with IDs "r0", "r1", ...
+     */
+    static List<Restaurant> randomRestaurants(Random random, int count) {
+        List<Restaurant> restaurants = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double[] point = randomPoint(random);
+            restaurants.add(new Restaurant().setId("r" + i).setName("Ristorante " + i)
+                    .setLatitude((float) point[0]).setLongitude((float) point[1]));
+        }
+        return restaurants;
+    }
+
+    /**
+     * Returns a random point, most of the times in northern Italy.
+     *
+     * @param random The source of the coordinates
+     * @return The latitude and the longitude
+     */
+    static double[] randomPoint(Random random) {
+        return switch (random.nextInt(10)) {
+            case 0 -> new double[]{-60 + random.nextDouble() * 120, (random.nextBoolean() ? 179 : -180) + random.nextDouble()};
+            case 1 -> new double[]{88 + random.nextDouble() * 2, -180 + random.nextDouble() * 360};
+            default -> new double[]{44 + random.nextDouble() * 3, 7 + random.nextDouble() * 5};
+        };
+    }
+
+    /**
+     * Computes the distance of every restaurant from a point and sorts them.
+     *
+     * @param restaurants The restaurants
+     * @param point       The latitude and longitude of the point
+     * @param filter      The condition the restaurants must satisfy
+     * @return The matching restaurants, closest first
+     */
+    static List<SpatialIndex.Neighbor> bruteForce(List<Restaurant> restaurants, double[] point, Predicate<Restaurant> filter) {
+        return restaurants.stream()
+                .filter(filter)
+                .map(r -> new SpatialIndex.Neighbor(r,
+                        DistanceCalculator.distanceInKm(point[0], point[1], r.getLatitude(), r.getLongitude())))
+                .sorted(Comparator.comparingDouble(SpatialIndex.Neighbor::distance))
+                .toList();
+    }
+
+    /**
+     * Checks that two lists of neighbors have the same distances, in the same order.
+     * <p>
+     * Restaurants at the same distance may come in any order, so only the distances are compared.
+     * </p>
+     *
+     * @param expected The neighbors found by the brute-force scan
+     * @param actual   The neighbors returned by the index
+     */
+    static void assertDistances(List<SpatialIndex.Neighbor> expected, List<SpatialIndex.Neighbor> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).distance(), actual.get(i).distance(), TOLERANCE, "Neighbor " + i);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+Mordente Marcello 761730 VA
+Luciano Alessio 759956 VA
+Nardo Luca 761132 VA
+Morosini Luca 760029 VA
+*/
+package uni.insubria.theknife.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of {@link ContentId}.
+ */
+class ContentIdTest {
+
+    @Test
+    void isStableAcrossRuns() {
+        // IDs are stored, so the hash must never change
+        assertEquals("d30a36199344046c", ContentId.of("Da Mario", "Via Roma 1, Varese"));
+        assertEquals("e4d174d5a8028b46", ContentId.candidate(1, "Da Mario", "Via Roma 1, Varese"));
+        assertEquals(ContentId.of("Da Mario", "Via Roma 1, Varese"), ContentId.candidate(0, "Da Mario", "Via Roma 1, Varese"));
+    }
+
+    @Test
+    void separatesTheParts() {
+        assertNotEquals(ContentId.of("ab", "c"), ContentId.of("a", "bc"));
+        assertNotEquals(ContentId.of("a", null), ContentId.of("a", "null"));
+        assertNotEquals(ContentId.of("a"), ContentId.of("a", ""));
+    }
+
+    @Test
+    void givesDistinctCandidates() {
+        Set<String> candidates = new HashSet<>();
+        for (int attempt = 0; attempt < 100; attempt++) {
+            String id = ContentId.candidate(attempt, "Da Mario", "Via Roma 1, Varese");
+            assertEquals(16, id.length());
+            assertTrue(id.matches("[0-9a-f]{16}"));
+            candidates.add(id);
+        }
+        assertEquals(100, candidates.size());
+    }
+
+    @Test
+    void doesNotCollideOnACatalogueSizedInput() {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 200_000; i++) ids.add(ContentId.of("Ristorante " + i, "Via Roma " + i));
+        assertEquals(200_000, ids.size());
+    }
+}